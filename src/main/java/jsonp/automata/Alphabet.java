@@ -0,0 +1,174 @@
+package jsonp.automata;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import jsonp.regex.*;
+
+/**
+ * Alphabet of compiled automata, partitions all chars into equivalence classes.
+ *
+ * Two chars are equivalent if they are accepted by exactly the same char terms,
+ * so automata can never tell them apart and they could share a column of transition table.
+ * Chars not accepted by any char term have no column at all.
+ *
+ * Class of each char is looked up with a two levels table, chars with same high byte share a page:
+ *
+ *     column(c) = leaves[pages[c >>> 8] + (c & 0xFF)]
+ *
+ * Pages with same content are stored only once, most high bytes share a single page.
+ */
+public class Alphabet {
+    public static final int None = -1;
+
+    private static final int PageSize = 256;
+
+    public final int width;
+    private final int[] pages;
+    private final int[] leaves;
+    private final char[] representatives;
+
+    private Alphabet(int[] pages, int[] leaves, char[] representatives) {
+        this.pages = pages;
+        this.leaves = leaves;
+        this.representatives = representatives;
+        this.width = representatives.length;
+    }
+
+    /**
+     * Build alphabet from all char terms used by automata.
+     *
+     *     0. split code units at every start and end of ranges, so each interval is fully
+     *        inside or outside of every char term
+     *     1. intervals accepted by same set of char terms belong to same class
+     *
+     * @param terms used for transitions
+     * @return built alphabet
+     */
+    public static Alphabet build(Set<CharTerm> terms) {
+        List<CharTerm> members = new ArrayList<>(terms);
+        TreeSet<Integer> cuts = new TreeSet<>(List.of(0, Character.MAX_VALUE + 1));
+        for (CharTerm term : members)
+            for (int index = 0; index < term.ranges.length; index += 2) {
+                cuts.add((int) term.ranges[index]);
+                cuts.add(term.ranges[index + 1] + 1);
+            }
+
+        int[] classes = new int[Character.MAX_VALUE + 1];
+        Map<BitSet, Integer> signatures = new HashMap<>();
+        Integer from = null;
+        for (int to : cuts) {
+            if (from != null) {
+                BitSet signature = new BitSet(members.size());
+                for (int index = 0; index < members.size(); index++)
+                    if (members.get(index).accept((char) (int) from))
+                        signature.set(index);
+
+                int column = None;
+                if (!signature.isEmpty())
+                    column = signatures.computeIfAbsent(signature, key -> signatures.size());
+                Arrays.fill(classes, from, to, column);
+            }
+            from = to;
+        }
+        return compress(classes, signatures.size());
+    }
+
+    /**
+     * Compress classes of all chars into shared pages.
+     * @param classes contains column of every char
+     * @param width is count of columns
+     * @return alphabet
+     */
+    private static Alphabet compress(int[] classes, int width) {
+        int[] pages = new int[(Character.MAX_VALUE + 1) / PageSize];
+        Map<List<Integer>, Integer> offsets = new HashMap<>();
+        List<Integer> leaves = new ArrayList<>();
+        for (int page = 0; page < pages.length; page++) {
+            List<Integer> content = Arrays.stream(classes, page * PageSize, (page + 1) * PageSize)
+                    .boxed()
+                    .toList();
+            Integer offset = offsets.get(content);
+            if (offset == null) {
+                offset = leaves.size();
+                offsets.put(content, offset);
+                leaves.addAll(content);
+            }
+            pages[page] = offset;
+        }
+
+        // First char of each class is used as its representative
+        char[] representatives = new char[width];
+        boolean[] found = new boolean[width];
+        for (int c = 0; c < classes.length; c++)
+            if (classes[c] != None && !found[classes[c]]) {
+                found[classes[c]] = true;
+                representatives[classes[c]] = (char) c;
+            }
+        return new Alphabet(pages, leaves.stream().mapToInt(Integer::intValue).toArray(), representatives);
+    }
+
+    /**
+     * Write lookup table of alphabet directly, so it could be read without compressing again:
+     *
+     *     width, representatives, pages, leaves count, leaves
+     *
+     * @param output going to be written into
+     * @throws IOException if output failed
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(this.width);
+        for (char representative : this.representatives)
+            output.writeChar(representative);
+        for (int page : this.pages)
+            output.writeInt(page);
+        output.writeInt(this.leaves.length);
+        for (int leaf : this.leaves)
+            output.writeInt(leaf);
+    }
+
+    /**
+     * Read alphabet written by Alphabet.write.
+     * @param input contains serialized alphabet
+     * @return alphabet
+     */
+    static Alphabet read(ByteBuffer input) {
+        char[] representatives = new char[input.getInt()];
+        input.asCharBuffer().get(representatives);
+        input.position(input.position() + representatives.length * Character.BYTES);
+        int[] pages = new int[(Character.MAX_VALUE + 1) / PageSize];
+        input.asIntBuffer().get(pages);
+        input.position(input.position() + pages.length * Integer.BYTES);
+        int[] leaves = new int[input.getInt()];
+        input.asIntBuffer().get(leaves);
+        input.position(input.position() + leaves.length * Integer.BYTES);
+        return new Alphabet(pages, leaves, representatives);
+    }
+
+    /**
+     * Get column (equivalence class) of given char.
+     * @param c is char going to be looked up
+     * @return column or None if char is not in alphabet
+     */
+    public int column(char c) {
+        return this.leaves[this.pages[c >>> 8] + (c & 0xFF)];
+    }
+
+    /**
+     * Get a char belongs to given column, which could be used for testing char terms.
+     * @param column of alphabet
+     * @return representative char
+     */
+    public char representative(int column) {
+        return this.representatives[column];
+    }
+}
@@ -0,0 +1,10 @@
+package jsonp.automata;
+
+/**
+ * Compiled automata which could be used for matching input chars.
+ *
+ * Automaton itself is immutable, all mutable state while matching is kept in runner.
+ */
+public interface Automaton {
+    public Runner runner();
+}
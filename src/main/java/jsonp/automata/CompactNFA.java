@@ -0,0 +1,188 @@
+package jsonp.automata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import jsonp.regex.*;
+
+/**
+ * Compact form of NFA used for matching.
+ *
+ * States are renumbered densely from 0 in order of their original index,
+ * so a smaller number still means a rule with higher priority.
+ * Each state keeps its own outgoing edges:
+ *
+ *     epsilons[state] -> targets of epsilon transitions
+ *     matchers[state][i] --char--> targets[state][i]
+ *
+ * And epsilon-closure of every single state is precomputed as a bitset,
+ * closure of a state set is just union of them.
+ *
+ * Counter transitions of counted repetitions are kept apart from plain epsilon transitions:
+ *
+ *     actions[state][i] --counter action--> actionTargets[state][i]
+ *     counters[state] -> counter which state belongs to, or null
+ *
+ * Precomputed closures only follow plain epsilon transitions, so they are exact only if
+ * NFA is not counting, otherwise counter values must be tracked while simulating.
+ *
+ * Compact NFA could be run directly with PikeVM, without determinization.
+ */
+public class CompactNFA implements Automaton {
+    public final int start;
+    public final int size;
+    public final String[] labels;
+    public final int[][] epsilons;
+    public final CharTerm[][] matchers;
+    public final int[][] targets;
+    public final long[][] closures;
+    public final Counter[] counters;
+    public final Counter.Action[][] actions;
+    public final int[][] actionTargets;
+    public final boolean counting;
+    public final Set<CharTerm> alphabet;
+
+    private CompactNFA(
+            int start,
+            String[] labels,
+            int[][] epsilons,
+            CharTerm[][] matchers,
+            int[][] targets,
+            Counter[] counters,
+            Counter.Action[][] actions,
+            int[][] actionTargets,
+            Set<CharTerm> alphabet) {
+        this.start = start;
+        this.size = labels.length;
+        this.labels = labels;
+        this.epsilons = epsilons;
+        this.matchers = matchers;
+        this.targets = targets;
+        this.counters = counters;
+        this.actions = actions;
+        this.actionTargets = actionTargets;
+        this.counting = Arrays.stream(counters).anyMatch(Objects::nonNull);
+        this.alphabet = alphabet;
+        this.closures = new long[this.size][];
+        for (int state = 0; state < this.size; state++)
+            this.closures[state] = this.search(state);
+    }
+
+    /**
+     * Renumber states of NFA and group transition table by source state.
+     * @param nfa going to be compacted
+     * @return compact NFA
+     */
+    public static CompactNFA build(NFA nfa) {
+        List<NFAState> states = new ArrayList<>(nfa.states);
+        states.add(nfa.enter);
+        for (TransitionRecord record : nfa.table) {
+            states.add(record.from);
+            states.add(record.to);
+        }
+        states.sort((stateA, stateB) -> stateA.index.compareTo(stateB.index));
+        Map<NFAState, Integer> numbers = new HashMap<>();
+        for (NFAState state : states)
+            numbers.putIfAbsent(state, numbers.size());
+
+        int size = numbers.size();
+        String[] labels = new String[size];
+        Counter[] counters = new Counter[size];
+        List<List<Integer>> epsilons = new ArrayList<>();
+        List<List<CharTerm>> matchers = new ArrayList<>();
+        List<List<Integer>> targets = new ArrayList<>();
+        List<List<Counter.Action>> actions = new ArrayList<>();
+        List<List<Integer>> actionTargets = new ArrayList<>();
+        for (int state = 0; state < size; state++) {
+            epsilons.add(new ArrayList<>());
+            matchers.add(new ArrayList<>());
+            targets.add(new ArrayList<>());
+            actions.add(new ArrayList<>());
+            actionTargets.add(new ArrayList<>());
+        }
+        for (Map.Entry<NFAState, Integer> entry : numbers.entrySet()) {
+            if (entry.getKey().isFinal)
+                labels[entry.getValue()] = entry.getKey().label;
+            counters[entry.getValue()] = entry.getKey().counter;
+        }
+
+        for (TransitionRecord record : nfa.table) {
+            int from = numbers.get(record.from);
+            int to = numbers.get(record.to);
+            if (record.action != null) {
+                actions.get(from).add(record.action);
+                actionTargets.get(from).add(to);
+            } else if (record.matcher instanceof CharTerm matcher) {
+                matchers.get(from).add(matcher);
+                targets.get(from).add(to);
+            } else {
+                epsilons.get(from).add(to);
+            }
+        }
+
+        int[][] epsilonTable = new int[size][];
+        CharTerm[][] matcherTable = new CharTerm[size][];
+        int[][] targetTable = new int[size][];
+        Counter.Action[][] actionTable = new Counter.Action[size][];
+        int[][] actionTargetTable = new int[size][];
+        for (int state = 0; state < size; state++) {
+            epsilonTable[state] = epsilons.get(state).stream().mapToInt(Integer::intValue).toArray();
+            matcherTable[state] = matchers.get(state).toArray(new CharTerm[0]);
+            targetTable[state] = targets.get(state).stream().mapToInt(Integer::intValue).toArray();
+            actionTable[state] = actions.get(state).toArray(new Counter.Action[0]);
+            actionTargetTable[state] = actionTargets.get(state).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return new CompactNFA(numbers.get(nfa.enter), labels, epsilonTable, matcherTable, targetTable,
+                counters, actionTable, actionTargetTable, Set.copyOf(nfa.alphabet));
+    }
+
+    /**
+     * Search epsilon-closure of single state using DFS.
+     * @param state to start searching
+     * @return bitset of all states reachable with epsilon transitions (including itself)
+     */
+    private long[] search(int state) {
+        long[] visited = new long[this.words()];
+        int[] stack = new int[this.size];
+        int top = 0;
+        stack[top++] = state;
+        visited[state >>> 6] |= 1L << state;
+        while (top > 0) {
+            int current = stack[--top];
+            for (int next : this.epsilons[current]) {
+                if ((visited[next >>> 6] & (1L << next)) != 0)
+                    continue;
+                visited[next >>> 6] |= 1L << next;
+                stack[top++] = next;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Count of 64 bits words for a bitset contains all states.
+     * @return words count
+     */
+    public int words() {
+        return (this.size + 63) >>> 6;
+    }
+
+    @Override
+    public Runner runner() {
+        return new PikeVM(this);
+    }
+
+    /**
+     * Check if state is a final state.
+     * @param state number
+     * @return if state has an output label
+     */
+    public boolean isFinal(int state) {
+        return this.labels[state] != null;
+    }
+}
@@ -0,0 +1,50 @@
+package jsonp.automata;
+
+/**
+ * Counter of a counted repetition e1{n, m}, shared by all transitions of a single repeat.
+ *
+ * Instead of unrolling e1 for m times, e1 is built only once and surrounded by counter transitions:
+ *
+ *                              --Increase-- (exit_e1) <--e1--
+ *                             v                              |
+ *     (enter) --Init--> (loop) --Enter (< m)--> (enter_e1) ---
+ *                             |
+ *                              --Exit (>= n)--> (exit)
+ *
+ * States from loop to exit_e1 carry a set of possible counter values while matching.
+ */
+public class Counter {
+
+    /**
+     * Actions of counter transitions, all of them consume no char.
+     *
+     * Init - start counting from 0
+     * Enter - enter repeated term again, only allowed for values less than m
+     * Increase - repeated term matched once more, values increase by 1
+     * Exit - leave repetition, only allowed for values not less than n
+     */
+    public enum Action {
+        Init, Enter, Increase, Exit
+    }
+
+    public final int n;
+    public final int m;
+
+    public Counter(int n, int m) {
+        this.n = n;
+        this.m = m;
+    }
+
+    /**
+     * Count of 64 bits words for a bitset contains all counter values from 0 to m.
+     * @return words count
+     */
+    public int words() {
+        return (this.m + 64) >>> 6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("{%d,%d}", this.n, this.m);
+    }
+}
@@ -0,0 +1,454 @@
+package jsonp.automata;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic automata compiled from NFA using subset construction.
+ *
+ * States are numbered densely from 0 and all transitions are stored in a flat table,
+ * row of each state holds next state for every column of the alphabet:
+ *
+ *     table[state * width + column] -> next state (or Dead)
+ *
+ * Columns are given by alphabet, chars outside of alphabet have no transition at all.
+ */
+public class DFA implements Automaton {
+    public static final int Dead = -1;
+
+    // Header of serialized DFA: "JDFA" and format version
+    private static final int Magic = 0x4A444641;
+    private static final int Version = 1;
+
+    /**
+     * Statistics of compiling, states count before and after minimization.
+     */
+    public static class Stats {
+        public final int built;
+        public final int minimized;
+        public final int width;
+
+        public Stats(int built, int minimized, int width) {
+            this.built = built;
+            this.minimized = minimized;
+            this.width = width;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("states: %d -> %d, columns: %d", this.built, this.minimized, this.width);
+        }
+    }
+
+    public final int start;
+    public final int width;
+    public final int[] table;
+    public final String[] labels;
+    public final Alphabet alphabet;
+    public final Stats stats;
+
+    public DFA(int start, int[] table, String[] labels, Alphabet alphabet, Stats stats) {
+        this.start = start;
+        this.width = alphabet.width;
+        this.table = table;
+        this.labels = labels;
+        this.alphabet = alphabet;
+        this.stats = stats;
+    }
+
+    /**
+     * Build DFA from NFA using subset construction.
+     * @param nfa going to be determinized
+     * @return equivalent DFA
+     */
+    public static DFA build(NFA nfa) {
+        return build(CompactNFA.build(nfa));
+    }
+
+    /**
+     * Build DFA from compact NFA using subset construction.
+     *
+     * Each DFA state represents an epsilon-closure of NFA states:
+     *     0. start state is epsilon-closure({enter})
+     *     1. for each unvisited state T and each char x: U = epsilon-closure(move(T, x))
+     *     2. if U is not empty and not visited, give it next index and mark it as unvisited
+     *
+     * Closures are unions of precomputed single state closures in compact NFA.
+     *
+     * If a closure contains multiple final states, label of the one with smallest index
+     * will be used, which means the rule have higher priority.
+     *
+     * Counted repetitions are not supported, build NFA without counting for DFA.
+     *
+     * @param nfa going to be determinized
+     * @return equivalent DFA
+     */
+    public static DFA build(CompactNFA nfa) {
+        if (nfa.counting)
+            throw new RuntimeException("counted repetitions should be unrolled before determinization");
+        Alphabet alphabet = Alphabet.build(nfa.alphabet);
+        int width = alphabet.width;
+
+        Map<BitSet, Integer> indexes = new HashMap<>();
+        List<BitSet> closures = new ArrayList<>();
+        List<int[]> rows = new ArrayList<>();
+        BitSet enter = BitSet.valueOf(nfa.closures[nfa.start]);
+        indexes.put(enter, 0);
+        closures.add(enter);
+
+        for (int index = 0; index < closures.size(); index++) {
+            BitSet closure = closures.get(index);
+            int[] row = new int[width];
+            Arrays.fill(row, Dead);
+
+            // Collect closures of moves for all columns from out edges of each state
+            BitSet[] moves = new BitSet[width];
+            for (int state = closure.nextSetBit(0); state >= 0; state = closure.nextSetBit(state + 1)) {
+                for (int edge = 0; edge < nfa.matchers[state].length; edge++) {
+                    BitSet target = BitSet.valueOf(nfa.closures[nfa.targets[state][edge]]);
+                    for (int column = 0; column < width; column++) {
+                        if (!nfa.matchers[state][edge].accept(alphabet.representative(column)))
+                            continue;
+                        if (moves[column] == null)
+                            moves[column] = new BitSet(nfa.size);
+                        moves[column].or(target);
+                    }
+                }
+            }
+
+            for (int column = 0; column < width; column++) {
+                if (moves[column] == null)
+                    continue;
+                Integer next = indexes.get(moves[column]);
+                if (next == null) {
+                    next = closures.size();
+                    indexes.put(moves[column], next);
+                    closures.add(moves[column]);
+                }
+                row[column] = next;
+            }
+            rows.add(row);
+        }
+
+        int[] table = new int[rows.size() * width];
+        String[] labels = new String[rows.size()];
+        for (int state = 0; state < rows.size(); state++) {
+            System.arraycopy(rows.get(state), 0, table, state * width, width);
+            labels[state] = label(nfa, closures.get(state));
+        }
+        Stats stats = new Stats(labels.length, labels.length, width);
+        return new DFA(0, table, labels, alphabet, stats);
+    }
+
+    /**
+     * Select label of final state with smallest index in closure.
+     * @param nfa contains labels of states
+     * @param closure contains NFA states
+     * @return label of selected final state or null if closure has no final state
+     */
+    private static String label(CompactNFA nfa, BitSet closure) {
+        for (int state = closure.nextSetBit(0); state >= 0; state = closure.nextSetBit(state + 1))
+            if (nfa.isFinal(state))
+                return nfa.labels[state];
+        return null;
+    }
+
+    /**
+     * Minimize DFA using Hopcroft algorithm.
+     *
+     * Dead state is added as an explicit sink so the automata is complete, then:
+     *     0. initial partition groups states by label, all non-accepting states (with sink) in one block
+     *     1. take a block A from worklist, for each column x find X = {s | move(s, x) in A}
+     *     2. split every block Y into Y & X and Y - X, if Y in worklist replace it by both halves,
+     *        otherwise add the smaller half into worklist
+     *
+     * Since labels are kept in initial partition, states for different rules are never merged
+     * and priority selected while building stays unchanged.
+     *
+     * @return equivalent DFA with minimal states count
+     */
+    public DFA minimize() {
+        int size = this.size();
+        int sink = size;
+        int total = size + 1;
+
+        // Reverse transitions grouped by column: sources[column][target] -> states moving into target
+        List<List<List<Integer>>> sources = new ArrayList<>();
+        for (int column = 0; column < this.width; column++) {
+            List<List<Integer>> targets = new ArrayList<>();
+            for (int state = 0; state < total; state++)
+                targets.add(new ArrayList<>());
+            for (int state = 0; state < total; state++) {
+                int next = state == sink ? Dead : this.table[state * this.width + column];
+                targets.get(next == Dead ? sink : next).add(state);
+            }
+            sources.add(targets);
+        }
+
+        // Initial partition by labels
+        int[] blockOf = new int[total];
+        List<List<Integer>> blocks = new ArrayList<>();
+        Map<String, Integer> labelBlocks = new HashMap<>();
+        for (int state = 0; state < total; state++) {
+            String label = state == sink ? null : this.labels[state];
+            Integer block = labelBlocks.get(label);
+            if (block == null) {
+                block = blocks.size();
+                labelBlocks.put(label, block);
+                blocks.add(new ArrayList<>());
+            }
+            blockOf[state] = block;
+            blocks.get(block).add(state);
+        }
+
+        List<Integer> worklist = new ArrayList<>();
+        boolean[] waiting = new boolean[total + 1];
+        for (int block = 0; block < blocks.size(); block++) {
+            worklist.add(block);
+            waiting[block] = true;
+        }
+
+        boolean[] marked = new boolean[total];
+        while (!worklist.isEmpty()) {
+            int splitter = worklist.removeLast();
+            waiting[splitter] = false;
+            List<Integer> members = new ArrayList<>(blocks.get(splitter));
+            for (int column = 0; column < this.width; column++) {
+                // Mark all states moving into splitter and collect touched blocks
+                List<Integer> touched = new ArrayList<>();
+                for (int target : members)
+                    for (int state : sources.get(column).get(target)) {
+                        if (marked[state])
+                            continue;
+                        marked[state] = true;
+                        if (!touched.contains(blockOf[state]))
+                            touched.add(blockOf[state]);
+                    }
+
+                for (int block : touched) {
+                    List<Integer> inside = new ArrayList<>();
+                    List<Integer> outside = new ArrayList<>();
+                    for (int state : blocks.get(block))
+                        (marked[state] ? inside : outside).add(state);
+                    if (outside.isEmpty())
+                        continue;
+
+                    int created = blocks.size();
+                    blocks.set(block, inside);
+                    blocks.add(outside);
+                    for (int state : outside)
+                        blockOf[state] = created;
+                    if (waiting.length <= created)
+                        waiting = Arrays.copyOf(waiting, created * 2);
+                    if (waiting[block] || outside.size() <= inside.size()) {
+                        worklist.add(created);
+                        waiting[created] = true;
+                    } else {
+                        worklist.add(block);
+                        waiting[block] = true;
+                    }
+                }
+                for (int target : members)
+                    for (int state : sources.get(column).get(target))
+                        marked[state] = false;
+            }
+        }
+
+        // Renumber blocks in order of their smallest state, block of sink becomes Dead
+        int[] renumbered = new int[blocks.size()];
+        Arrays.fill(renumbered, Dead);
+        int count = 0;
+        for (int state = 0; state < size; state++) {
+            int block = blockOf[state];
+            if (block != blockOf[sink] && renumbered[block] == Dead)
+                renumbered[block] = count++;
+        }
+
+        int[] table = new int[count * this.width];
+        String[] labels = new String[count];
+        for (int state = 0; state < size; state++) {
+            int index = renumbered[blockOf[state]];
+            if (index == Dead)
+                continue;
+            labels[index] = this.labels[state];
+            for (int column = 0; column < this.width; column++) {
+                int next = this.table[state * this.width + column];
+                table[index * this.width + column] = next == Dead ? Dead : renumbered[blockOf[next]];
+            }
+        }
+        Stats stats = new Stats(this.stats.built, count, this.width);
+        return new DFA(renumbered[blockOf[this.start]], table, labels, this.alphabet, stats);
+    }
+
+    /**
+     * Move from state driven by given char.
+     * @param state current state
+     * @param c is char reading in
+     * @return next state or Dead if no transition allowed
+     */
+    public int next(int state, char c) {
+        int column = this.alphabet.column(c);
+        if (column == Alphabet.None)
+            return Dead;
+        return this.table[state * this.width + column];
+    }
+
+    /**
+     * Check if runs of chars in given range could not be told apart by their lengths:
+     *     0. all chars in range belong to same column
+     *     1. moving on that column from any state reaches a state which loops on it
+     *
+     * Then any run of one or more such chars ends in same state, which could be used for
+     * replacing a run of chars with a run of different length, like UTF-8 bytes of them.
+     *
+     * @param from is first char of range
+     * @param to is last char of range
+     * @return if runs of chars in range are uniform
+     */
+    public boolean uniform(char from, char to) {
+        int column = this.alphabet.column(from);
+        for (int c = from; c <= to; c++)
+            if (this.alphabet.column((char) c) != column)
+                return false;
+        if (column == Alphabet.None)
+            return true;
+        for (int state = 0; state < this.size(); state++) {
+            int next = this.table[state * this.width + column];
+            if (next != Dead && this.table[next * this.width + column] != next)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get output label of given state.
+     * @param state of DFA
+     * @return label or null if state is not accepting
+     */
+    public String label(int state) {
+        return this.labels[state];
+    }
+
+    /**
+     * Write DFA in a compact binary format, which could be loaded without compiling:
+     *
+     *     magic, version, start, size, built states count, alphabet,
+     *     labels count, labels, label index of each state (-1 for none), table
+     *
+     * @param stream going to be written into
+     * @throws IOException if output failed
+     */
+    public void write(OutputStream stream) throws IOException {
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(Magic);
+        output.writeInt(Version);
+        output.writeInt(this.start);
+        output.writeInt(this.size());
+        output.writeInt(this.stats.built);
+        this.alphabet.write(output);
+
+        List<String> names = new ArrayList<>();
+        for (String label : this.labels)
+            if (label != null && !names.contains(label))
+                names.add(label);
+        output.writeInt(names.size());
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+        for (String label : this.labels)
+            output.writeInt(label == null ? -1 : names.indexOf(label));
+        for (int next : this.table)
+            output.writeInt(next);
+        output.flush();
+    }
+
+    /**
+     * Read DFA written by DFA.write.
+     * @param input contains serialized DFA
+     * @return loaded DFA
+     */
+    public static DFA read(ByteBuffer input) {
+        input = input.duplicate().order(ByteOrder.BIG_ENDIAN);
+        if (input.getInt() != Magic || input.getInt() != Version)
+            throw new RuntimeException("invalid or unsupported DFA tables");
+        int start = input.getInt();
+        int size = input.getInt();
+        int built = input.getInt();
+        Alphabet alphabet = Alphabet.read(input);
+
+        String[] names = new String[input.getInt()];
+        for (int index = 0; index < names.length; index++) {
+            byte[] name = new byte[input.getInt()];
+            input.get(name);
+            names[index] = new String(name, StandardCharsets.UTF_8);
+        }
+        String[] labels = new String[size];
+        for (int state = 0; state < size; state++) {
+            int name = input.getInt();
+            labels[state] = name == -1 ? null : names[name];
+        }
+        int[] table = new int[size * alphabet.width];
+        input.asIntBuffer().get(table);
+        return new DFA(start, table, labels, alphabet, new Stats(built, size, alphabet.width));
+    }
+
+    @Override
+    public Runner runner() {
+        return new Runner() {
+            private int state = DFA.this.start;
+
+            @Override
+            public void reset() {
+                this.state = DFA.this.start;
+            }
+
+            @Override
+            public boolean step(char c) {
+                int next = DFA.this.next(this.state, c);
+                if (next == Dead)
+                    return false;
+                this.state = next;
+                return true;
+            }
+
+            @Override
+            public int advance(CharSequence text, int from, int to) {
+                int state = this.state;
+                while (from < to) {
+                    int next = DFA.this.next(state, text.charAt(from));
+                    if (next == Dead)
+                        break;
+                    state = next;
+                    from++;
+                }
+                this.state = state;
+                return from;
+            }
+
+            @Override
+            public String label() {
+                return DFA.this.labels[this.state];
+            }
+        };
+    }
+
+    /**
+     * Count of states in DFA.
+     * @return states count
+     */
+    public int size() {
+        return this.labels.length;
+    }
+}
@@ -0,0 +1,247 @@
+package jsonp.automata;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * DFA built on the fly from compact NFA, like RE2 does.
+ *
+ * Instead of running subset construction for whole NFA, a DFA state is only built
+ * when it is reached for the first time, then stored in a bounded cache:
+ *
+ *     table[state * width + column] -> next state, Dead, or Unknown if not built yet
+ *
+ * When cache is full, all states will be flushed except current one.
+ * If cache keeps thrashing (fewer than MinCharsPerState chars matched for each cached state
+ * since last flush), building states costs more than simulation itself,
+ * so runner gives up and falls back to PikeVM for the rest of its life.
+ *
+ * Each runner owns its cache, so memory of a runner never exceeds given budget.
+ *
+ * If NFA is counting, a DFA state is a configuration of NFA states together with their counter values,
+ * see PikeVM.save. Counter values are bounded, so there are still finitely many DFA states,
+ * and next states are built by stepping a PikeVM loaded with current configuration.
+ */
+public class LazyDFA implements Automaton {
+    public static final int DefaultBudget = 256 * 1024;
+
+    private static final int Unknown = -2;
+    private static final int MinCharsPerState = 10;
+    private static final int StateOverhead = 64;
+
+    public final CompactNFA nfa;
+    public final Alphabet alphabet;
+    public final int capacity;
+
+    public LazyDFA(CompactNFA nfa) {
+        this(nfa, DefaultBudget);
+    }
+
+    /**
+     * Create lazy DFA with given memory budget.
+     * @param nfa going to be determinized lazily
+     * @param budget in bytes for cache of each runner
+     */
+    public LazyDFA(CompactNFA nfa, int budget) {
+        this.nfa = nfa;
+        this.alphabet = Alphabet.build(nfa.alphabet);
+        // Configuration of counting NFA also carries counter values of each counted state in it
+        int words = nfa.words();
+        for (Counter counter : nfa.counters)
+            if (counter != null)
+                words += counter.words();
+        int perState = Integer.BYTES * this.alphabet.width + Long.BYTES * words + StateOverhead;
+        this.capacity = Math.max(2, budget / perState);
+    }
+
+    @Override
+    public Runner runner() {
+        return new CachedRunner();
+    }
+
+    /**
+     * Bitset of NFA states used as key of cached DFA state.
+     */
+    private static class Key {
+        private final long[] words;
+        private final int hash;
+
+        Key(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Key)
+                return Arrays.equals(this.words, ((Key) obj).words);
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    private class CachedRunner implements Runner {
+        private final int width = LazyDFA.this.alphabet.width;
+        private final int[] table = new int[LazyDFA.this.capacity * this.width];
+        private final long[][] sets = new long[LazyDFA.this.capacity][];
+        private final String[] labels = new String[LazyDFA.this.capacity];
+        private final Map<Key, Integer> indexes = new HashMap<>();
+        private int count = 0;
+        private int state;
+        private int start = Unknown;
+        private long chars = 0;
+        private PikeVM fallback = null;
+        private final PikeVM simulator = LazyDFA.this.nfa.counting ? new PikeVM(LazyDFA.this.nfa) : null;
+
+        CachedRunner() {
+            this.reset();
+        }
+
+        @Override
+        public void reset() {
+            if (this.fallback == null)
+                this.state = this.start != Unknown ? this.start : this.begin();
+            if (this.fallback != null)
+                this.fallback.reset();
+        }
+
+        /**
+         * Find or build cached start state, it is kept until cache is flushed.
+         * @return start state
+         */
+        private int begin() {
+            if (this.simulator != null) {
+                this.simulator.reset();
+                this.start = this.lookup(this.simulator.save());
+            } else {
+                this.start = this.lookup(LazyDFA.this.nfa.closures[LazyDFA.this.nfa.start]);
+            }
+            return this.start;
+        }
+
+        @Override
+        public boolean step(char c) {
+            if (this.fallback != null)
+                return this.fallback.step(c);
+            int column = LazyDFA.this.alphabet.column(c);
+            if (column == Alphabet.None)
+                return false;
+
+            int next = this.table[this.state * this.width + column];
+            if (next == Unknown) {
+                next = this.build(column);
+                if (this.fallback != null)
+                    return this.fallback.step(c);
+            }
+            if (next == DFA.Dead)
+                return false;
+            this.state = next;
+            this.chars++;
+            return true;
+        }
+
+        @Override
+        public String label() {
+            if (this.fallback != null)
+                return this.fallback.label();
+            return this.labels[this.state];
+        }
+
+        /**
+         * Build next state of current state with given column and save it into table.
+         * @param column of char reading in
+         * @return next state or Dead
+         */
+        private int build(int column) {
+            CompactNFA nfa = LazyDFA.this.nfa;
+            char c = LazyDFA.this.alphabet.representative(column);
+            long[] current = this.sets[this.state];
+            if (this.simulator != null) {
+                this.simulator.load(current);
+                int next = this.simulator.step(c) ? this.lookup(this.simulator.save()) : DFA.Dead;
+                if (this.fallback == null)
+                    this.table[this.state * this.width + column] = next;
+                return next;
+            }
+
+            long[] moved = new long[nfa.words()];
+            boolean empty = true;
+            for (int word = 0; word < current.length; word++) {
+                for (long bits = current[word]; bits != 0; bits &= bits - 1) {
+                    int from = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    for (int edge = 0; edge < nfa.matchers[from].length; edge++) {
+                        if (!nfa.matchers[from][edge].accept(c))
+                            continue;
+                        long[] closure = nfa.closures[nfa.targets[from][edge]];
+                        for (int index = 0; index < moved.length; index++)
+                            moved[index] |= closure[index];
+                        empty = false;
+                    }
+                }
+            }
+
+            int next = empty ? DFA.Dead : this.lookup(moved);
+            if (this.fallback == null)
+                this.table[this.state * this.width + column] = next;
+            return next;
+        }
+
+        /**
+         * Find cached state for given NFA state set, or add a new one.
+         * @param set of NFA states, or configuration if NFA is counting
+         * @return cached state
+         */
+        private int lookup(long[] set) {
+            Integer index = this.indexes.get(new Key(set));
+            if (index != null)
+                return index;
+            if (this.count == LazyDFA.this.capacity && !this.flush())
+                return DFA.Dead;
+            return this.add(set);
+        }
+
+        /**
+         * Flush all cached states except current one.
+         * @return false if cache is thrashing and runner falls back to NFA simulation
+         */
+        private boolean flush() {
+            long[] current = this.sets[this.state];
+            if (this.chars < (long) MinCharsPerState * this.count) {
+                this.fallback = new PikeVM(LazyDFA.this.nfa);
+                this.fallback.load(current);
+                return false;
+            }
+            this.indexes.clear();
+            Arrays.fill(this.sets, null);
+            this.start = Unknown;
+            this.count = 0;
+            this.chars = 0;
+            this.state = this.add(current);
+            return true;
+        }
+
+        private int add(long[] set) {
+            int index = this.count++;
+            this.sets[index] = set;
+            this.labels[index] = this.label(set);
+            Arrays.fill(this.table, index * this.width, (index + 1) * this.width, Unknown);
+            this.indexes.put(new Key(set), index);
+            return index;
+        }
+
+        private String label(long[] set) {
+            for (int word = 0; word < LazyDFA.this.nfa.words(); word++)
+                for (long bits = set[word]; bits != 0; bits &= bits - 1) {
+                    int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    if (LazyDFA.this.nfa.isFinal(state))
+                        return LazyDFA.this.nfa.labels[state];
+                }
+            return null;
+        }
+    }
+}
@@ -11,6 +11,11 @@ import java.util.stream.Stream;
 import jsonp.regex.*;
 
 public class NFA {
+    /**
+     * Repetitions with upper bound not less than this are built with counters instead of unrolling.
+     */
+    public static final int CountingThreshold = 16;
+
     public final NFAState enter;
     public final Set<NFAState> states;
     public final Set<CharTerm> alphabet;
@@ -42,7 +47,9 @@ public class NFA {
      *     1. e -> char
      *         (enter) --char--> (exit)
      *     2. e -> e1 e2
-     *         (enter) --e1--> (exit_e1) --epsilon--> (enter_e2) --e2--> (exit)
+     *         (enter) --e1--> (middle) --e2--> (exit)
+     *        Exit of e1 is shared as enter of e2, which is safe since enter of any part has no
+     *        incoming transitions and exit of any part has no outgoing transitions.
      *     3. e -> e1 | e2
      *                --epsilon--> (enter_e1) --e1--> (exit_e1) --epsilon-->
      *         (enter)                                                       (exit)
@@ -56,6 +63,8 @@ public class NFA {
      *            |                                                              |
      *             ---------------------------epsilon----------------------------
      * 
+     *        e1+ is built in same way without epsilon from enter to exit.
+     * 
      *     5. (Extended repeat term) e -> e1{n, m}
      *                                    |-----------epislon--------------|  
      *                                    |        |--------epsilon--------|  
@@ -64,8 +73,28 @@ public class NFA {
      *         ----------------------------^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^^
      *                 first n times                 last (m - n) times
      * 
+     *        Or with a counter if m is not less than CountingThreshold, e1 is built only once,
+     *        see Counter for its structure.
      */
     public static NFA build(Term term, NFAState enter, NFAState exit) {
+        return build(term, enter, exit, true);
+    }
+
+    /**
+     * Build NFA from regex expression, with counted repetitions or not.
+     *
+     * Counted repetitions could only be simulated by PikeVM and LazyDFA,
+     * so DFA should be built from NFA without counting.
+     * Repetitions nested inside a counted repetition are always unrolled,
+     * so each state belongs to at most one counter.
+     *
+     * @param term used for building NFA
+     * @param enter state for current part of NFA
+     * @param exit state for current part of NFA
+     * @param counting if large repetitions should be built with counters
+     * @return built NFA
+     */
+    public static NFA build(Term term, NFAState enter, NFAState exit, boolean counting) {
         // If term grouped, set it as an final state
         if (term.grouped) {
             exit.isFinal = true;
@@ -86,13 +115,11 @@ public class NFA {
                         new HashSet<>(Arrays.asList(matcher)),
                         List.of(new TransitionRecord(enter, exit, matcher)));
             case ConcatTerm matcher: {
-                NFAState exitE1 = new NFAState();
-                NFAState enterE2 = new NFAState();
-                NFA e1 = build(matcher.tl, enter, exitE1);
-                NFA e2 = build(matcher.tr, enterE2, exit);
+                NFAState middle = new NFAState();
+                NFA e1 = build(matcher.tl, enter, middle, counting);
+                NFA e2 = build(matcher.tr, middle, exit, counting);
                 List<TransitionRecord> table = Stream.concat(e1.table.stream(), e2.table.stream())
                         .collect(Collectors.toList());
-                table.add(new TransitionRecord(exitE1, enterE2, Term.Epsilon));
                 Set<NFAState> states = Stream.concat(e1.states.stream(), e2.states.stream())
                         .collect(Collectors.toCollection(HashSet::new));
                 Set<CharTerm> alphabet = Stream.concat(e1.alphabet.stream(), e2.alphabet.stream())
@@ -104,8 +131,8 @@ public class NFA {
                 NFAState exitE1 = new NFAState();
                 NFAState enterE2 = new NFAState();
                 NFAState exitE2 = new NFAState();
-                NFA e1 = build(matcher.tl, enterE1, exitE1);
-                NFA e2 = build(matcher.tr, enterE2, exitE2);
+                NFA e1 = build(matcher.tl, enterE1, exitE1, counting);
+                NFA e2 = build(matcher.tr, enterE2, exitE2, counting);
                 List<TransitionRecord> table = Stream.concat(e1.table.stream(), e2.table.stream())
                         .collect(Collectors.toList());
                 table.add(new TransitionRecord(enter, enterE1, Term.Epsilon));
@@ -123,7 +150,7 @@ public class NFA {
             case KleeneTerm matcher: {
                 NFAState enterE1 = new NFAState();
                 NFAState exitE1 = new NFAState();
-                NFA e1 = build(matcher.t, enterE1, exitE1);
+                NFA e1 = build(matcher.t, enterE1, exitE1, counting);
                 List<TransitionRecord> table = new ArrayList<>(e1.table);
                 table.add(new TransitionRecord(enter, enterE1, Term.Epsilon));
                 table.add(new TransitionRecord(enter, exit, Term.Epsilon));
@@ -135,11 +162,28 @@ public class NFA {
                 Set<CharTerm> alphabet = Set.copyOf(e1.alphabet);
                 return new NFA(enter, states, alphabet, table);
             }
+            case PlusTerm matcher: {
+                NFAState enterE1 = new NFAState();
+                NFAState exitE1 = new NFAState();
+                NFA e1 = build(matcher.t, enterE1, exitE1, counting);
+                List<TransitionRecord> table = new ArrayList<>(e1.table);
+                table.add(new TransitionRecord(enter, enterE1, Term.Epsilon));
+                table.add(new TransitionRecord(exitE1, enterE1, Term.Epsilon));
+                table.add(new TransitionRecord(exitE1, exit, Term.Epsilon));
+                Set<NFAState> states = new HashSet<>(e1.states);
+                states.add(enter);
+                states.add(exit);
+                Set<CharTerm> alphabet = Set.copyOf(e1.alphabet);
+                return new NFA(enter, states, alphabet, table);
+            }
 
             // Extended RepeatTerm, see `regex.Term.repeat`
             case RepeatTerm matcher: {
-                List<NFAState> chain = Arrays.asList(enter);
-                Set<NFAState> states = new HashSet<>(Arrays.asList(exit));
+                if (counting && matcher.m >= CountingThreshold)
+                    return count(matcher, enter, exit);
+
+                List<NFAState> chain = new ArrayList<>(List.of(enter));
+                Set<NFAState> states = new HashSet<>(Arrays.asList(enter, exit));
                 Set<CharTerm> alphabet = new HashSet<>();
                 List<TransitionRecord> table = new ArrayList<>();
 
@@ -148,10 +192,10 @@ public class NFA {
                     NFAState enterE = chain.getLast();
                     NFAState exitE = new NFAState();
                     chain.add(exitE);
-                    NFA e = build(matcher.t, enterE, exitE);
+                    NFA e = build(matcher.t, enterE, exitE, counting);
                     table.addAll(e.table);
                     states.addAll(e.states);
-                    alphabet = e.alphabet;
+                    alphabet.addAll(e.alphabet);
                 }
 
                 // Add connection for last n states to exit states
@@ -165,15 +209,61 @@ public class NFA {
         }
     }
 
+    /**
+     * Build counted repetition, repeated term is built only once and guarded by a counter.
+     * @param matcher is repeat term
+     * @param enter state for current part of NFA
+     * @param exit state for current part of NFA
+     * @return built NFA
+     */
+    private static NFA count(RepeatTerm matcher, NFAState enter, NFAState exit) {
+        Counter counter = new Counter(matcher.n, matcher.m);
+        NFAState loop = new NFAState();
+        NFAState enterE1 = new NFAState();
+        NFAState exitE1 = new NFAState();
+        NFA e1 = build(matcher.t, enterE1, exitE1, false);
+        List<TransitionRecord> table = new ArrayList<>(e1.table);
+        table.add(new TransitionRecord(enter, loop, counter, Counter.Action.Init));
+        table.add(new TransitionRecord(loop, enterE1, counter, Counter.Action.Enter));
+        table.add(new TransitionRecord(exitE1, loop, counter, Counter.Action.Increase));
+        table.add(new TransitionRecord(loop, exit, counter, Counter.Action.Exit));
+        Set<NFAState> states = new HashSet<>(e1.states);
+        states.add(loop);
+        for (NFAState state : states)
+            state.counter = counter;
+        states.add(enter);
+        states.add(exit);
+        Set<CharTerm> alphabet = Set.copyOf(e1.alphabet);
+        return new NFA(enter, states, alphabet, table);
+    }
+
     /**
      * Build NFA from given term.
      * @param term used for building NFA
      * @return built NFA
      */
     public static NFA build(Term term) {
+        return build(term, true);
+    }
+
+    /**
+     * Build NFA from given term, with counted repetitions or not.
+     * @param term used for building NFA
+     * @param counting if large repetitions should be built with counters
+     * @return built NFA
+     */
+    public static NFA build(Term term, boolean counting) {
         NFAState enter = new NFAState();
         NFAState exit = new NFAState();
-        return build(term, enter, exit);
+        return build(term, enter, exit, counting);
+    }
+
+    /**
+     * Check if NFA contains any counted repetition.
+     * @return if any transition acts on a counter
+     */
+    public boolean counting() {
+        return this.table.stream().anyMatch(record -> record.counter != null);
     }
 
     /**
@@ -291,7 +381,9 @@ public class NFA {
         StringBuilder transitions = new StringBuilder();
         for (TransitionRecord record : this.table) {
             String name;
-            if (record.matcher instanceof EpsilonTerm)
+            if (record.action != null)
+                name = "$" + record.action + record.counter;
+            else if (record.matcher instanceof EpsilonTerm)
                 name = "$";
             else
                 name = record.matcher.toString();
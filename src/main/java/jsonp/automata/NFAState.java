@@ -1,17 +1,22 @@
 package jsonp.automata;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class NFAState {
 
-    private static Integer Counter = 0;
+    // States may be created by multiple threads compiling lexers at same time
+    private static final AtomicInteger Counter = new AtomicInteger();
     public final Integer index;
 
     // Info for final state
     public boolean isFinal = false;
     public String label = null;
 
+    // Counter of counted repetition which state belongs to
+    public Counter counter = null;
+
     public NFAState() {
-        this.index = NFAState.Counter;
-        NFAState.Counter += 1;
+        this.index = NFAState.Counter.getAndIncrement();
     }
 
     @Override
@@ -0,0 +1,302 @@
+package jsonp.automata;
+
+import java.util.Arrays;
+
+/**
+ * Simulate compact NFA without determinization, like Pike VM does.
+ *
+ * Two sparse sets are preallocated for current and next state lists, for each char:
+ *     0. clear next list
+ *     1. for each state in current list and each char edge accepting given char,
+ *        add target and all states in its epsilon-closure into next list
+ *     2. if next list is not empty, swap current and next list
+ *
+ * Final state with smallest index is tracked while adding states,
+ * so no sorting or allocation needed for each char.
+ *
+ * If NFA is counting, each state inside a counted repetition also carries a bitset of
+ * possible counter values (from 0 to m), preallocated for both lists.
+ * A state already in list is followed again only if it gains new counter values,
+ * values are bounded so following always stops.
+ */
+public class PikeVM implements Runner {
+    private static final int None = Integer.MAX_VALUE;
+
+    // Counter values of target state are not tracked
+    private static final long[] Free = new long[0];
+
+    private final CompactNFA nfa;
+    private final int[] stack;
+    private final boolean[] pending;
+    private final long[] scratch;
+    private SparseSet current;
+    private SparseSet next;
+    private long[][] currentValues;
+    private long[][] nextValues;
+    private int best;
+
+    public PikeVM(CompactNFA nfa) {
+        this.nfa = nfa;
+        this.stack = new int[nfa.size];
+        this.pending = new boolean[nfa.size];
+        this.current = new SparseSet(nfa.size);
+        this.next = new SparseSet(nfa.size);
+        this.currentValues = new long[nfa.size][];
+        this.nextValues = new long[nfa.size][];
+        int words = 0;
+        for (int state = 0; state < nfa.size; state++) {
+            Counter counter = nfa.counters[state];
+            if (counter == null)
+                continue;
+            this.currentValues[state] = new long[counter.words()];
+            this.nextValues[state] = new long[counter.words()];
+            words = Math.max(words, counter.words());
+        }
+        this.scratch = new long[words];
+        this.start();
+    }
+
+    @Override
+    public void reset() {
+        this.start();
+    }
+
+    /**
+     * Replace current state list with epsilon-closure of start state.
+     */
+    private void start() {
+        this.current.clear();
+        if (this.nfa.counting)
+            this.best = this.track(this.current, this.currentValues, this.nfa.start, Free, None);
+        else
+            this.best = this.follow(this.current, this.nfa.start, None);
+    }
+
+    /**
+     * Replace current state list with given configuration, which should be closed under epsilon transitions.
+     *
+     * Configuration is a bitset of NFA states, followed by counter values of each counted state in it
+     * in ascending order, see PikeVM.save.
+     *
+     * @param configuration of NFA states
+     */
+    void load(long[] configuration) {
+        this.current.clear();
+        this.best = None;
+        int offset = this.nfa.words();
+        for (int word = 0; word < this.nfa.words(); word++)
+            for (long bits = configuration[word]; bits != 0; bits &= bits - 1) {
+                int state = (word << 6) + Long.numberOfTrailingZeros(bits);
+                this.current.add(state);
+                if (state < this.best && this.nfa.isFinal(state))
+                    this.best = state;
+                long[] values = this.currentValues[state];
+                if (values != null) {
+                    System.arraycopy(configuration, offset, values, 0, values.length);
+                    offset += values.length;
+                }
+            }
+    }
+
+    /**
+     * Save current state list as configuration, which could be loaded again or compared.
+     * @return configuration of NFA states
+     */
+    long[] save() {
+        long[] states = new long[this.nfa.words()];
+        int length = states.length;
+        for (int index = 0; index < this.current.size(); index++) {
+            int state = this.current.get(index);
+            states[state >>> 6] |= 1L << state;
+            if (this.currentValues[state] != null)
+                length += this.currentValues[state].length;
+        }
+        long[] configuration = new long[length];
+        System.arraycopy(states, 0, configuration, 0, states.length);
+        int offset = states.length;
+        for (int word = 0; word < states.length; word++)
+            for (long bits = states[word]; bits != 0; bits &= bits - 1) {
+                long[] values = this.currentValues[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                if (values != null) {
+                    System.arraycopy(values, 0, configuration, offset, values.length);
+                    offset += values.length;
+                }
+            }
+        return configuration;
+    }
+
+    @Override
+    public boolean step(char c) {
+        this.next.clear();
+        int nextBest = None;
+        boolean counting = this.nfa.counting;
+        for (int index = 0; index < this.current.size(); index++) {
+            int state = this.current.get(index);
+            for (int edge = 0; edge < this.nfa.matchers[state].length; edge++) {
+                if (!this.nfa.matchers[state][edge].accept(c))
+                    continue;
+                int target = this.nfa.targets[state][edge];
+                if (counting)
+                    nextBest = this.track(this.next, this.nextValues, target, this.currentValues[state], nextBest);
+                else
+                    nextBest = this.follow(this.next, target, nextBest);
+            }
+        }
+        if (this.next.isEmpty())
+            return false;
+
+        SparseSet swap = this.current;
+        this.current = this.next;
+        this.next = swap;
+        long[][] swapValues = this.currentValues;
+        this.currentValues = this.nextValues;
+        this.nextValues = swapValues;
+        this.best = nextBest;
+        return true;
+    }
+
+    @Override
+    public String label() {
+        return this.best == None ? null : this.nfa.labels[this.best];
+    }
+
+    /**
+     * Add state and all epsilon transition reachable states into list using DFS.
+     * @param list is target state list
+     * @param state going to be added
+     * @param best is current final state with smallest index
+     * @return final state with smallest index after adding
+     */
+    private int follow(SparseSet list, int state, int best) {
+        if (!list.add(state))
+            return best;
+        int top = 0;
+        this.stack[top++] = state;
+        while (top > 0) {
+            int current = this.stack[--top];
+            if (current < best && this.nfa.isFinal(current))
+                best = current;
+            for (int target : this.nfa.epsilons[current])
+                if (list.add(target))
+                    this.stack[top++] = target;
+        }
+        return best;
+    }
+
+    /**
+     * Add state with counter values into list, then follow epsilon and counter transitions using DFS.
+     * @param list is target state list
+     * @param values contains counter values of states in list
+     * @param state going to be added
+     * @param incoming counter values of state, ignored if state is not counted
+     * @param best is current final state with smallest index
+     * @return final state with smallest index after adding
+     */
+    private int track(SparseSet list, long[][] values, int state, long[] incoming, int best) {
+        if (!this.merge(list, values, state, incoming))
+            return best;
+        int top = 0;
+        this.stack[top++] = state;
+        this.pending[state] = true;
+        while (top > 0) {
+            int current = this.stack[--top];
+            this.pending[current] = false;
+            if (current < best && this.nfa.isFinal(current))
+                best = current;
+
+            long[] own = values[current];
+            for (int target : this.nfa.epsilons[current])
+                if (this.merge(list, values, target, own) && !this.pending[target]) {
+                    this.pending[target] = true;
+                    this.stack[top++] = target;
+                }
+            for (int edge = 0; edge < this.nfa.actions[current].length; edge++) {
+                int target = this.nfa.actionTargets[current][edge];
+                long[] moved = this.act(this.nfa.actions[current][edge], current, target, own);
+                if (moved != null && this.merge(list, values, target, moved) && !this.pending[target]) {
+                    this.pending[target] = true;
+                    this.stack[top++] = target;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Add state into list, or merge counter values into it if it already exists.
+     * @return if state is new or it gains new counter values
+     */
+    private boolean merge(SparseSet list, long[][] values, int state, long[] incoming) {
+        long[] target = values[state];
+        if (target == null)
+            return list.add(state);
+        if (list.add(state)) {
+            System.arraycopy(incoming, 0, target, 0, target.length);
+            return true;
+        }
+        boolean changed = false;
+        for (int word = 0; word < target.length; word++) {
+            long added = incoming[word] & ~target[word];
+            if (added != 0) {
+                target[word] |= added;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Apply counter action on counter values of source state.
+     * @param action of counter transition
+     * @param from is source state
+     * @param to is target state
+     * @param values of source state
+     * @return counter values of target state, Free if target is not counted, or null if action is blocked
+     */
+    private long[] act(Counter.Action action, int from, int to, long[] values) {
+        switch (action) {
+            case Init: {
+                int words = this.nfa.counters[to].words();
+                Arrays.fill(this.scratch, 0, words, 0);
+                this.scratch[0] = 1L;
+                return this.scratch;
+            }
+            case Enter:
+                return this.shift(values, 0, this.nfa.counters[from].m - 1);
+            case Increase:
+                return this.shift(values, 1, this.nfa.counters[from].m);
+            case Exit: {
+                int n = this.nfa.counters[from].n;
+                for (int word = n >>> 6; word < values.length; word++) {
+                    long mask = word == n >>> 6 ? -1L << n : -1L;
+                    if ((values[word] & mask) != 0)
+                        return Free;
+                }
+                return null;
+            }
+            default:
+                throw new RuntimeException(String.format("unknown counter action %s", action));
+        }
+    }
+
+    /**
+     * Shift counter values into scratch and drop values greater than limit.
+     * @return scratch, or null if no value left
+     */
+    private long[] shift(long[] values, int distance, int limit) {
+        boolean empty = true;
+        long carry = 0;
+        for (int word = 0; word < values.length; word++) {
+            long shifted = distance == 0 ? values[word] : (values[word] << 1) | carry;
+            carry = distance == 0 ? 0 : values[word] >>> 63;
+            int low = word << 6;
+            if (limit < low)
+                shifted = 0;
+            else if (limit - low < 63)
+                shifted &= -1L >>> (63 - (limit - low));
+            this.scratch[word] = shifted;
+            empty &= shifted == 0;
+        }
+        return empty ? null : this.scratch;
+    }
+}
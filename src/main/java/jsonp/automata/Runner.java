@@ -0,0 +1,42 @@
+package jsonp.automata;
+
+/**
+ * Runner keeps current state while running an automaton over input chars.
+ */
+public interface Runner {
+
+    /**
+     * Move back to the start state of automaton.
+     */
+    public void reset();
+
+    /**
+     * Move current state driven by given char.
+     * If no transition allowed, current state should be kept unchanged.
+     *
+     * @param c is char reading in
+     * @return if any transition allowed with given char
+     */
+    public boolean step(char c);
+
+    /**
+     * Move current state over chars of text as far as possible.
+     * Runners could override it for keeping current state in local variables while looping.
+     *
+     * @param text contains chars reading in
+     * @param from is index of first char
+     * @param to is index after last char
+     * @return index of first char which cannot be accepted, or to if all chars accepted
+     */
+    public default int advance(CharSequence text, int from, int to) {
+        while (from < to && this.step(text.charAt(from)))
+            from++;
+        return from;
+    }
+
+    /**
+     * Get output label of current state.
+     * @return label of rule with highest priority or null if current state is not accepting
+     */
+    public String label();
+}
@@ -0,0 +1,57 @@
+package jsonp.automata;
+
+/**
+ * Set of small integers with constant time insert, lookup and clear.
+ *
+ * Members are kept in insertion order in dense array, sparse array maps member to its position:
+ *
+ *     contains(x) <=> sparse[x] < size && dense[sparse[x]] == x
+ *
+ * So neither of arrays need to be cleared between usages.
+ */
+class SparseSet {
+    private final int[] dense;
+    private final int[] sparse;
+    private int size;
+
+    SparseSet(int capacity) {
+        this.dense = new int[capacity];
+        this.sparse = new int[capacity];
+        this.size = 0;
+    }
+
+    boolean contains(int value) {
+        int index = this.sparse[value];
+        return index < this.size && this.dense[index] == value;
+    }
+
+    /**
+     * Add value into set.
+     * @param value going to be added
+     * @return false if value already exists
+     */
+    boolean add(int value) {
+        if (this.contains(value))
+            return false;
+        this.dense[this.size] = value;
+        this.sparse[value] = this.size;
+        this.size++;
+        return true;
+    }
+
+    int get(int index) {
+        return this.dense[index];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    void clear() {
+        this.size = 0;
+    }
+}
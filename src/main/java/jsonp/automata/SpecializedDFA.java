@@ -0,0 +1,201 @@
+package jsonp.automata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * DFA specialized into a generated runner class.
+ *
+ * Instead of looking up transition table, each state becomes a branch of nested switch:
+ *
+ *     switch (state) {
+ *         case 0:
+ *             switch (column) {
+ *                 case 1: case 2: return 3;
+ *                 default: return -1;
+ *             }
+ *         ...
+ *     }
+ *
+ * Source is compiled in memory with javax.tools and defined as a hidden class,
+ * so JIT could inline transitions and keep current state in registers.
+ * Compiling requires a JDK, see SpecializedDFA.available.
+ */
+public class SpecializedDFA implements Automaton {
+    private static final String Package = SpecializedDFA.class.getPackageName();
+    private static final String Name = "GeneratedRunner";
+
+    public final DFA dfa;
+    private final MethodHandle constructor;
+
+    public SpecializedDFA(DFA dfa) {
+        this.dfa = dfa;
+        byte[] bytecode = compile(source(dfa));
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytecode, true);
+            this.constructor = lookup.findConstructor(
+                    lookup.lookupClass(),
+                    MethodType.methodType(void.class, Alphabet.class, String[].class))
+                    .asType(MethodType.methodType(Runner.class, Alphabet.class, String[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("cannot define generated runner", e);
+        }
+    }
+
+    /**
+     * Check if java compiler could be used for generating runners.
+     * @return if a system java compiler exists
+     */
+    public static boolean available() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    @Override
+    public Runner runner() {
+        try {
+            return (Runner) this.constructor.invokeExact(this.dfa.alphabet, this.dfa.labels);
+        } catch (Throwable e) {
+            throw new RuntimeException("cannot create generated runner", e);
+        }
+    }
+
+    /**
+     * Generate java source of runner for given DFA.
+     *
+     * Columns moving into same state are merged into a single case.
+     *
+     * @param dfa going to be specialized
+     * @return java source
+     */
+    public static String source(DFA dfa) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("package %s;\n\n", Package));
+        builder.append(String.format("final class %s implements Runner {\n", Name));
+        builder.append("    private final Alphabet alphabet;\n");
+        builder.append("    private final String[] labels;\n");
+        builder.append("    private int state;\n\n");
+        builder.append(String.format("    %s(Alphabet alphabet, String[] labels) {\n", Name));
+        builder.append("        this.alphabet = alphabet;\n");
+        builder.append("        this.labels = labels;\n");
+        builder.append(String.format("        this.state = %d;\n", dfa.start));
+        builder.append("    }\n\n");
+        builder.append("    public void reset() {\n");
+        builder.append(String.format("        this.state = %d;\n", dfa.start));
+        builder.append("    }\n\n");
+        builder.append("    public String label() {\n");
+        builder.append("        return this.labels[this.state];\n");
+        builder.append("    }\n\n");
+        builder.append("    public boolean step(char c) {\n");
+        builder.append("        int next = move(this.state, this.alphabet.column(c));\n");
+        builder.append("        if (next < 0)\n");
+        builder.append("            return false;\n");
+        builder.append("        this.state = next;\n");
+        builder.append("        return true;\n");
+        builder.append("    }\n\n");
+        builder.append("    public int advance(CharSequence text, int from, int to) {\n");
+        builder.append("        int state = this.state;\n");
+        builder.append("        while (from < to) {\n");
+        builder.append("            int next = move(state, this.alphabet.column(text.charAt(from)));\n");
+        builder.append("            if (next < 0)\n");
+        builder.append("                break;\n");
+        builder.append("            state = next;\n");
+        builder.append("            from++;\n");
+        builder.append("        }\n");
+        builder.append("        this.state = state;\n");
+        builder.append("        return from;\n");
+        builder.append("    }\n\n");
+        builder.append("    private static int move(int state, int column) {\n");
+        builder.append("        switch (state) {\n");
+        for (int state = 0; state < dfa.size(); state++) {
+            Map<Integer, List<Integer>> targets = new LinkedHashMap<>();
+            for (int column = 0; column < dfa.width; column++) {
+                int next = dfa.table[state * dfa.width + column];
+                if (next != DFA.Dead)
+                    targets.computeIfAbsent(next, key -> new ArrayList<>()).add(column);
+            }
+            builder.append(String.format("            case %d:\n", state));
+            builder.append("                switch (column) {\n");
+            for (Map.Entry<Integer, List<Integer>> target : targets.entrySet()) {
+                builder.append("                    ");
+                for (int column : target.getValue())
+                    builder.append(String.format("case %d: ", column));
+                builder.append(String.format("return %d;\n", target.getKey()));
+            }
+            builder.append("                    default: return -1;\n");
+            builder.append("                }\n");
+        }
+        builder.append("            default:\n");
+        builder.append("                return -1;\n");
+        builder.append("        }\n");
+        builder.append("    }\n");
+        builder.append("}\n");
+        return builder.toString();
+    }
+
+    /**
+     * Compile generated source in memory.
+     * @param source of generated runner
+     * @return bytecode of generated runner
+     */
+    private static byte[] compile(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new RuntimeException("java compiler is not available for generating runner");
+
+        String className = Package + "." + Name;
+        JavaFileObject input = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, null);
+        ForwardingJavaFileManager<StandardJavaFileManager> manager = new ForwardingJavaFileManager<>(standard) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(
+                    Location location, String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///" + name.replace('.', '/')), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return bytecode;
+                    }
+                };
+            }
+        };
+
+        // Generated source only depends on this package, so its code source is enough for class path
+        String classPath;
+        try {
+            classPath = Path.of(Runner.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+        } catch (Exception e) {
+            classPath = System.getProperty("java.class.path");
+        }
+        List<String> options = List.of("-classpath", classPath);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        if (!compiler.getTask(null, manager, diagnostics, options, null, List.of(input)).call())
+            throw new RuntimeException(String.format(
+                    "cannot compile generated runner: %s", diagnostics.getDiagnostics()));
+        return bytecode.toByteArray();
+    }
+}
@@ -4,15 +4,28 @@ import jsonp.regex.*;
 
 /**
  * Transition record contains source state and destination state and matcher between them.
+ * Counter transitions are epsilon transitions with an action on counter of a counted repetition.
  */
 public class TransitionRecord {
     public final NFAState from;
     public final NFAState to;
     public final TransitionableTerm matcher;
+    public final Counter counter;
+    public final Counter.Action action;
 
     public TransitionRecord(NFAState from, NFAState to, TransitionableTerm matcher) {
         this.from = from;
         this.to = to;
         this.matcher = matcher;
+        this.counter = null;
+        this.action = null;
+    }
+
+    public TransitionRecord(NFAState from, NFAState to, Counter counter, Counter.Action action) {
+        this.from = from;
+        this.to = to;
+        this.matcher = Term.Epsilon;
+        this.counter = counter;
+        this.action = action;
     }
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package jsonp.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * View UTF-8 bytes as chars without decoding, each byte becomes a char from 0 to 0xFF:
+ *
+ *     charAt(index) = bytes[offset + index] & 0xFF
+ *
+ * ASCII chars keep their values, and bytes of a non-ASCII char become a run of chars
+ * from 0x80 to 0xFF. Lexer could scan this view directly if it cannot tell runs of
+ * non-ASCII chars apart by their lengths, see CompiledLexer.bytes.
+ *
+ * Unlike other char sequences, toString decodes bytes as UTF-8,
+ * so only tokens really materialized are decoded.
+ */
+public class ByteSequence implements CharSequence {
+    private final byte[] array;
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    public ByteSequence(byte[] array) {
+        this(array, 0, array.length);
+    }
+
+    public ByteSequence(byte[] array, int offset, int length) {
+        this.array = array;
+        this.buffer = null;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * View remaining bytes of buffer, position of buffer is not changed.
+     * @param buffer contains UTF-8 bytes
+     */
+    public ByteSequence(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            this.array = buffer.array();
+            this.buffer = null;
+            this.offset = buffer.arrayOffset() + buffer.position();
+        } else {
+            this.array = null;
+            this.buffer = buffer;
+            this.offset = buffer.position();
+        }
+        this.length = buffer.remaining();
+    }
+
+    private ByteSequence(byte[] array, ByteBuffer buffer, int offset, int length) {
+        this.array = array;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (this.array != null)
+            return (char) (this.array[this.offset + index] & 0xFF);
+        return (char) (this.buffer.get(this.offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSequence(this.array, this.buffer, this.offset + start, end - start);
+    }
+
+    /**
+     * Search an ASCII byte in given range, bytes are compared directly without converting to chars.
+     * @param b is byte going to be searched
+     * @param from is start of range
+     * @param to is end of range
+     * @return index of first byte found, or -1
+     */
+    public int indexOf(byte b, int from, int to) {
+        for (int index = from; index < to; index++) {
+            byte current = this.array != null
+                    ? this.array[this.offset + index]
+                    : this.buffer.get(this.offset + index);
+            if (current == b)
+                return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Decode bytes as UTF-8.
+     */
+    @Override
+    public String toString() {
+        if (this.array != null)
+            return new String(this.array, this.offset, this.length, StandardCharsets.UTF_8);
+        byte[] bytes = new byte[this.length];
+        this.buffer.get(this.offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
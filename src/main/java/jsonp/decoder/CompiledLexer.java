@@ -0,0 +1,143 @@
+package jsonp.decoder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import jsonp.automata.*;
+import jsonp.regex.Optimizer;
+import jsonp.regex.Term;
+
+/**
+ * Build an empty automata for Lexer with just a single entry state and no transitions.
+ * Then all patterns will be compiled as nfa so it could be added into this automata.
+ * 
+ * With structure like this:
+ *            --epsilon--> term1
+ *     (init) --epsilon--> term2
+ *             --epsilon--> term3
+ *            ...
+ * 
+ * Each pattern is simplified by Optimizer first, and will have an final state for indicate output.
+ * Then this NFA will be parsed into an equivalant DFA automata,
+ * or simulated directly if NFA engine selected.
+ * 
+ * Compiled lexer is immutable and could be shared between threads,
+ * all scanning state is kept in Lexer cursors handed out by it.
+ * Runner of a cursor may own caches (such as states built by LazyDFA), so idle cursors are kept
+ * in a small bounded pool, borrowed and released by single calls, then caches keep warm across documents.
+ * Pool belongs to compiled lexer itself, so it is collected together with its lexer.
+ */
+public class CompiledLexer {
+    public final NFA nfa;
+    public final Automaton automaton;
+
+    // Idle cursors, at most a couple for each processor
+    private final BlockingQueue<Lexer> cursors =
+            new ArrayBlockingQueue<>(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    // If UTF-8 bytes could be scanned directly through ByteSequence
+    public final boolean bytes;
+
+    public CompiledLexer(List<Term> terms) {
+        this(terms, Lexer.Engine.DFA);
+    }
+
+    public CompiledLexer(List<Term> terms, Lexer.Engine engine) {
+        // Only NFA simulations could count, repetitions are unrolled for DFA
+        boolean counting = engine == Lexer.Engine.NFA || engine == Lexer.Engine.Lazy;
+
+        // If single term passed into lexer, just use it as NFA
+        if (terms.size() == 1) {
+            this.nfa = NFA.build(Optimizer.optimize(terms.getLast()), counting);
+        } else {
+            // For multiple branches add them all
+            NFAState enter = new NFAState();
+            this.nfa = new NFA(enter, new HashSet<>(), new HashSet<>(), new ArrayList<>());
+            this.nfa.states.add(enter);
+            for (Term term : terms) {
+                NFA branch = NFA.build(Optimizer.optimize(term), counting);
+                this.nfa.states.addAll(branch.states);
+                this.nfa.alphabet.addAll(branch.alphabet);
+                this.nfa.table.addAll(branch.table);
+                this.nfa.table.add(new TransitionRecord(enter, branch.enter, Term.Epsilon));
+            }
+        }
+
+        CompactNFA compact = CompactNFA.build(this.nfa);
+        switch (engine) {
+            case DFA:
+                this.automaton = DFA.build(compact).minimize();
+                break;
+            case NFA:
+                this.automaton = compact;
+                break;
+            case Lazy:
+                this.automaton = new LazyDFA(compact);
+                break;
+            case Generated: {
+                // Generating runner needs a JDK, use table driven DFA if compiler is missing
+                DFA dfa = DFA.build(compact).minimize();
+                this.automaton = SpecializedDFA.available() ? new SpecializedDFA(dfa) : dfa;
+                break;
+            }
+            default:
+                throw new RuntimeException(String.format("unknown lexer engine %s", engine));
+        }
+        this.bytes = bytes(this.automaton);
+    }
+
+    /**
+     * Create compiled lexer with an automaton already compiled, such as DFA loaded from tables.
+     * @param automaton used for matching
+     */
+    public CompiledLexer(Automaton automaton) {
+        this.nfa = null;
+        this.automaton = automaton;
+        this.bytes = bytes(automaton);
+    }
+
+    /**
+     * Check if automaton could scan UTF-8 bytes viewed as chars from 0 to 0xFF.
+     *
+     * Bytes of non-ASCII chars are all from 0x80 to 0xFF, so it is safe if all non-ASCII chars
+     * belong to same column, and runs of them are uniform, see DFA.uniform.
+     * Only DFA could be checked, bytes are decoded first for other engines.
+     *
+     * @param automaton used for matching
+     * @return if bytes could be scanned directly
+     */
+    private static boolean bytes(Automaton automaton) {
+        if (automaton instanceof SpecializedDFA specialized)
+            automaton = specialized.dfa;
+        return automaton instanceof DFA dfa && dfa.uniform('\u0080', Character.MAX_VALUE);
+    }
+
+    /**
+     * Hand out a new cursor for scanning, it could be reused after reset.
+     * @return lexer cursor
+     */
+    public Lexer lexer() {
+        return new Lexer(this);
+    }
+
+    /**
+     * Borrow an idle cursor, or a new cursor if all of them are borrowed.
+     * @return lexer cursor, should be released after scanning
+     */
+    Lexer borrow() {
+        Lexer lexer = this.cursors.poll();
+        return lexer != null ? lexer : new Lexer(this);
+    }
+
+    /**
+     * Release a borrowed cursor, so it will be reused by next call, or dropped if pool is full.
+     * @param lexer is borrowed cursor
+     */
+    void release(Lexer lexer) {
+        lexer.reset("");
+        this.cursors.offer(lexer);
+    }
+}
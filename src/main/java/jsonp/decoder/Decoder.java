@@ -1,20 +1,90 @@
 package jsonp.decoder;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
+import jsonp.automata.DFA;
 import jsonp.regex.Term;
 
+/**
+ * Decoder is immutable after creation, so a single decoder could be shared by all threads.
+ * Each call of tokenize takes its own cursor from compiled lexer.
+ */
 public class Decoder {
-    public final Lexer lexer;
+    public final CompiledLexer lexer;
+    public final NumberParser.Mode numbers;
+    // Shared by all calls for canonicalizing object keys, or null
+    public final SymbolTable symbols;
 
     public Decoder() {
+        this(NumberParser.Mode.Default);
+    }
+
+    public Decoder(NumberParser.Mode numbers) {
+        this(numbers, new SymbolTable());
+    }
+
+    /**
+     * Create decoder with precompiled lexer tables if they are packaged,
+     * otherwise compile grammar into DFA.
+     * @param numbers decides types of parsed numbers
+     * @param symbols caches object keys across documents, or null for parsing each key as a new string
+     */
+    public Decoder(NumberParser.Mode numbers, SymbolTable symbols) {
+        DFA tables = LexerTables.load();
+        if (tables == null)
+            this.lexer = new CompiledLexer(grammar(), Lexer.Engine.DFA);
+        else
+            this.lexer = new CompiledLexer(tables);
+        this.numbers = numbers;
+        this.symbols = symbols;
+    }
+
+    public Decoder(Lexer.Engine engine) {
+        this(engine, NumberParser.Mode.Default);
+    }
+
+    public Decoder(Lexer.Engine engine, NumberParser.Mode numbers) {
+        this(engine, numbers, new SymbolTable());
+    }
+
+    public Decoder(Lexer.Engine engine, NumberParser.Mode numbers, SymbolTable symbols) {
+        this.lexer = new CompiledLexer(grammar(), engine);
+        this.numbers = numbers;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Rules of JSON tokens, in order of priority.
+     * @return terms grouped with labels of Token.Type
+     */
+    public static List<Term> grammar() {
         Term True = Term.string("true").group("true");
         Term False = Term.string("false").group("false");
         Term Null = Term.string("null").group("null");
+        Term Escape = Term.concat(List.of(
+                Term.string("\\"),
+                Term.alter(List.of(
+                        Term.srange("\"\\/bfnrt", "[\"\\/bfnrt]"),
+                        Term.concat(List.of(
+                                Term.string("u"),
+                                Term.repeat(Term.srange("0123456789abcdefABCDEF", "[0-9a-fA-F]"), 4)))))));
         Term String = Term.concat(List.of(
                 Term.string("\""),
-                Term.repeat(Term.Any),
+                Term.repeat(Term.alter(List.of(Term.Any, Escape))),
                 Term.string("\""))).group("string");
         Term Number = Term.concat(List.of(
                 Term.optional(Term.string("-")),
@@ -37,26 +107,164 @@ public class Decoder {
         Term CurlyRight = Term.string("}").group("}");
         Term SquareLeft = Term.string("[").group("[");
         Term SquareRight = Term.string("]").group("]");
-        this.lexer = new Lexer(List.of(
+        return List.of(
                 True, False, Null, String, Number,
-                Space, Comma, Colon, CurlyLeft, CurlyRight, SquareLeft, SquareRight));
+                Space, Comma, Colon, CurlyLeft, CurlyRight, SquareLeft, SquareRight);
     }
 
     public List<Token> tokenize(String jsonText) {
-        List<Token> records = new LinkedList<>();
-        for (Character c : jsonText.toCharArray()) {
-            Token record = this.lexer.read(c);
-            if (!record.nothing)
-                records.add(record);
+        List<Token> records = new ArrayList<>();
+        Lexer lexer = this.lexer.borrow();
+        try {
+            lexer.tokens(jsonText).forEachRemaining(records::add);
+        } finally {
+            this.lexer.release(lexer);
         }
-        Token record = this.lexer.read();
-        records.add(record);
-        this.lexer.reset();
         return records;
     }
 
+    /**
+     * Decode json text, tokens are scanned while parsing without being collected.
+     * Only spaces are allowed after value.
+     * @param jsonText contains json
+     * @return parsed json object
+     */
     public JsonObject decode(String jsonText) {
-        Parser parser = new Parser(this.tokenize(jsonText));
-        return parser.parse();
+        return this.decodeStrictly(jsonText);
+    }
+
+    /**
+     * Create parser with number mode and symbol table of this decoder.
+     * @param tokens going to be parsed
+     * @return parser
+     */
+    Parser parser(Iterator<Token> tokens) {
+        return new Parser(tokens, this.numbers, this.symbols);
+    }
+
+    /**
+     * Decode a complete json text with a borrowed cursor, only spaces are allowed after value.
+     * @param text contains json
+     * @return parsed json object
+     */
+    JsonObject decodeStrictly(CharSequence text) {
+        Lexer lexer = this.lexer.borrow();
+        try {
+            return this.decode(lexer, text);
+        } finally {
+            this.lexer.release(lexer);
+        }
+    }
+
+    /**
+     * Decode a complete json text with given cursor, only spaces are allowed after value.
+     * @param lexer is cursor used for scanning
+     * @param text contains json
+     * @return parsed json object
+     */
+    JsonObject decode(Lexer lexer, CharSequence text) {
+        return this.complete(lexer.tokens(text));
+    }
+
+    /**
+     * Parse a single value from tokens, then check only spaces are left.
+     * @param tokens of a complete json text
+     * @return parsed json object
+     */
+    private JsonObject complete(Iterator<Token> tokens) {
+        JsonObject result = this.parser(tokens).parse();
+        while (tokens.hasNext()) {
+            Token token = tokens.next();
+            if (token.tag != Token.Type.Space)
+                throw new InvalidToken(String.format("unexpected %s after json", token));
+        }
+        return result;
+    }
+
+    /**
+     * Decode UTF-8 encoded json.
+     * @param bytes contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(byte[] bytes) {
+        return this.decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decode UTF-8 encoded json from remaining bytes of buffer, position of buffer is not changed.
+     *
+     * Bytes are scanned directly if lexer allows, and only materialized strings are decoded,
+     * otherwise whole buffer is decoded before scanning. Only spaces are allowed after value.
+     *
+     * @param buffer contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(ByteBuffer buffer) {
+        if (!this.lexer.bytes)
+            return this.decode(StandardCharsets.UTF_8.decode(buffer.duplicate()).toString());
+        return this.decodeStrictly(new ByteSequence(buffer));
+    }
+
+    /**
+     * Decode UTF-8 encoded json file, file is mapped into memory and scanned directly if lexer allows,
+     * see MappedTokenStream, otherwise it is read through a fixed size buffer.
+     * Only spaces are allowed after value.
+     * @param path of json file
+     * @return parsed json object
+     */
+    public JsonObject decode(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (!this.lexer.bytes)
+                return this.decode((ReadableByteChannel) channel);
+            return this.complete(new MappedTokenStream(this.lexer, channel));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tokenize chars from reader lazily, see TokenStream.
+     * @param reader going to be tokenized
+     * @return token stream
+     */
+    public TokenStream tokenize(Reader reader) {
+        return new TokenStream(this.lexer, reader);
+    }
+
+    /**
+     * Decode json from reader without loading whole document, tokens are parsed while scanning.
+     * Reader is read to its end, and only spaces are allowed after value.
+     * @param reader contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(Reader reader) {
+        return this.complete(this.tokenize(reader));
+    }
+
+    /**
+     * Read json from reader event by event, see JsonReader.
+     * @param reader contains json text
+     * @return json reader
+     */
+    public JsonReader reader(Reader reader) {
+        return new JsonReader(this.tokenize(reader), this.numbers, this.symbols);
+    }
+
+    /**
+     * Decode json from UTF-8 encoded stream.
+     * @param stream contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(InputStream stream) {
+        return this.decode(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode json from UTF-8 encoded channel.
+     * @param channel contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(ReadableByteChannel channel) {
+        return this.decode(Channels.newReader(channel, StandardCharsets.UTF_8));
     }
 }
@@ -1,8 +1,20 @@
 package jsonp.decoder;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Decoded json value, as a tagged union of its type:
+ *
+ *     Number  -> unboxed long or bits of double in value, BigInteger or BigDecimal in object
+ *     Boolean -> 0 or 1 in value
+ *     String  -> string in object
+ *     Array   -> elements in an exactly sized array in object
+ *     Object  -> members in object, small objects are flat arrays, see Members
+ *
+ * Scalars are only boxed when they are read with as(), arrays are returned as fixed size lists.
+ */
 public class JsonObject {
 
     public enum Type {
@@ -10,55 +22,128 @@ public class JsonObject {
         String, Number, Boolean, Null
     }
 
+    // Marks unboxed numbers in object field
+    private enum Primitive {
+        Int, Long, Double
+    }
+
+    private static final JsonObject[] Empty = new JsonObject[0];
+
     public final Type type;
-    public Object object = null;
+    private final Object object;
+    private final long value;
 
     public JsonObject(Token token) {
+        this(token, NumberParser.Mode.Default);
+    }
+
+    /**
+     * Create json object of a value token.
+     * @param token of value type
+     * @param numbers decides types of parsed numbers
+     */
+    public JsonObject(Token token, NumberParser.Mode numbers) {
+        this(token, numbers, null);
+    }
+
+    /**
+     * Create json object of a value token.
+     * @param token of value type
+     * @param numbers decides types of parsed numbers
+     * @param scratch is reused for unescaping strings, or null
+     */
+    public JsonObject(Token token, NumberParser.Mode numbers, StringBuilder scratch) {
         switch (token.tag) {
             case Token.Type.String:
                 this.type = Type.String;
-                this.object = parseString(token);
+                this.object = parseString(token, scratch);
+                this.value = 0;
                 break;
             case Token.Type.Number:
+                Number number = parseNumber(token, numbers);
                 this.type = Type.Number;
-                this.object = parseNumber(token);
+                this.object = primitive(number);
+                this.value = bits(number);
                 break;
             case Token.Type.True:
                 this.type = Type.Boolean;
-                this.object = true;
+                this.object = null;
+                this.value = 1;
                 break;
             case Token.Type.False:
                 this.type = Type.Boolean;
-                this.object = false;
+                this.object = null;
+                this.value = 0;
                 break;
             case Token.Type.Null:
                 this.type = Type.Null;
                 this.object = null;
+                this.value = 0;
                 break;
             default:
-                throw new InvalidToken(String.format("%s is cannot be parsed as value type", token.content));
+                throw new InvalidToken(String.format("%s is cannot be parsed as value type", token));
         }
     }
 
+    /**
+     * Create json array, elements are copied into an exactly sized array.
+     * @param array contains elements
+     */
     public JsonObject(List<JsonObject> array) {
         this.type = Type.Array;
-        this.object = array;
+        this.object = array.toArray(Empty);
+        this.value = 0;
     }
 
     public JsonObject(Map<String, JsonObject> object) {
+        if (object instanceof Members members)
+            members.trim();
         this.type = Type.Object;
         this.object = object;
+        this.value = 0;
+    }
+
+    public JsonObject(Number number) {
+        this.type = Type.Number;
+        this.object = primitive(number);
+        this.value = bits(number);
+    }
+
+    private static Object primitive(Number number) {
+        if (number instanceof Integer)
+            return Primitive.Int;
+        if (number instanceof Long)
+            return Primitive.Long;
+        if (number instanceof Double)
+            return Primitive.Double;
+        return number;
+    }
+
+    private static long bits(Number number) {
+        if (number instanceof Double)
+            return Double.doubleToRawLongBits(number.doubleValue());
+        if (number instanceof Integer || number instanceof Long)
+            return number.longValue();
+        return 0;
     }
 
     /**
      * Parse a token to number.
      * @param token with Number type
-     * @return Number value with Integer or Double type
+     * @return Number value with Integer, Long or BigInteger type for integers, Double type for decimals
      */
     public static Number parseNumber(Token token) {
-        if (token.content.contains(".") || token.content.contains("E") || token.content.contains("e"))
-            return Double.parseDouble(token.content);
-        return Integer.parseInt(token.content);
+        return parseNumber(token, NumberParser.Mode.Default);
+    }
+
+    /**
+     * Parse a token to number directly from its source, see NumberParser.
+     * @param token with Number type
+     * @param numbers decides types of parsed numbers
+     * @return parsed number
+     */
+    public static Number parseNumber(Token token, NumberParser.Mode numbers) {
+        return NumberParser.parse(token.source, token.start, token.end, numbers);
     }
 
     /**
@@ -67,7 +152,17 @@ public class JsonObject {
      * @return unquoted string
      */
     public static String parseString(Token token) {
-        return token.content.substring(1, token.content.length() - 1);
+        return parseString(token, null);
+    }
+
+    /**
+     * Parse a token to string directly from its source, see StringParser.
+     * @param token string type with double quote ""
+     * @param scratch is reused for unescaping, or null
+     * @return unquoted and unescaped string
+     */
+    public static String parseString(Token token, StringBuilder scratch) {
+        return StringParser.parse(token.source, token.start, token.end, scratch);
     }
 
     /**
@@ -113,11 +208,91 @@ public class JsonObject {
             builder.append("]");
             return builder.toString();
         }
-        return this.object.toString();
+        if (this.type == Type.Null)
+            return "null";
+        return this.as().toString();
     }
 
+    /**
+     * Convert json object into java object of its type, unboxed scalars are boxed here:
+     *
+     *     Object  -> Map<String, JsonObject>
+     *     Array   -> List<JsonObject> of fixed size
+     *     String  -> String
+     *     Number  -> Integer, Long, Double, BigInteger or BigDecimal, see NumberParser
+     *     Boolean -> Boolean
+     *     Null    -> null
+     *
+     * @param <T> java type of json object
+     * @return converted object
+     */
     @SuppressWarnings("unchecked")
     public <T> T as() {
-        return (T) this.object;
+        switch (this.type) {
+            case Number:
+                if (this.object == Primitive.Int)
+                    return (T) Integer.valueOf((int) this.value);
+                if (this.object == Primitive.Long)
+                    return (T) Long.valueOf(this.value);
+                if (this.object == Primitive.Double)
+                    return (T) Double.valueOf(Double.longBitsToDouble(this.value));
+                return (T) this.object;
+            case Boolean:
+                return (T) Boolean.valueOf(this.value != 0);
+            case Array:
+                return (T) Arrays.asList((JsonObject[]) this.object);
+            default:
+                return (T) this.object;
+        }
+    }
+
+    /**
+     * Read number without boxing, decimals are truncated.
+     * @return value of number
+     */
+    public long asLong() {
+        if (this.type != Type.Number)
+            throw new RuntimeException(String.format("%s is not a number", this.type));
+        if (this.object == Primitive.Int || this.object == Primitive.Long)
+            return this.value;
+        if (this.object == Primitive.Double)
+            return (long) Double.longBitsToDouble(this.value);
+        return ((Number) this.object).longValue();
+    }
+
+    /**
+     * Read number without boxing.
+     * @return value of number
+     */
+    public double asDouble() {
+        if (this.type != Type.Number)
+            throw new RuntimeException(String.format("%s is not a number", this.type));
+        if (this.object == Primitive.Int || this.object == Primitive.Long)
+            return this.value;
+        if (this.object == Primitive.Double)
+            return Double.longBitsToDouble(this.value);
+        return ((Number) this.object).doubleValue();
+    }
+
+    /**
+     * Read boolean without boxing.
+     * @return value of boolean
+     */
+    public boolean asBoolean() {
+        if (this.type != Type.Boolean)
+            throw new RuntimeException(String.format("%s is not a boolean", this.type));
+        return this.value != 0;
+    }
+
+    /**
+     * Count elements of array or members of object.
+     * @return size of container
+     */
+    public int size() {
+        if (this.type == Type.Array)
+            return ((JsonObject[]) this.object).length;
+        if (this.type == Type.Object)
+            return ((Map<?, ?>) this.object).size();
+        throw new RuntimeException(String.format("%s has no size", this.type));
     }
 }
@@ -0,0 +1,280 @@
+package jsonp.decoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pull style reader of json, like StAX does.
+ *
+ * Each call of next pulls just enough tokens from lexer for next event, without lookahead:
+ *
+ *     {"a": [1, true]}
+ *     -> ObjectBegin, Name(a), ArrayBegin, Value(1), Value(true), ArrayEnd, ObjectEnd, End
+ *
+ * Only a stack of open containers is kept, so a few fields could be picked out from
+ * a large document in a single pass, and unwanted subtrees could be skipped.
+ *
+ * Json reader is a cursor, it should NOT be shared between threads.
+ */
+public class JsonReader {
+
+    public enum Event {
+        ObjectBegin,
+        ObjectEnd,
+        ArrayBegin,
+        ArrayEnd,
+        Name,
+        Value,
+        End
+    }
+
+    // What is expected by next call of next
+    private enum Expect {
+        Value, FirstName, Name, Colon, NextMember, FirstElement, NextElement, Done
+    }
+
+    private final Iterator<Token> tokens;
+    private final NumberParser.Mode numbers;
+    private final SymbolTable symbols;
+    private final StringBuilder scratch = new StringBuilder();
+    private boolean[] objects = new boolean[16];
+    private int depth = 0;
+    private Expect expect = Expect.Value;
+    private Event event = null;
+    private Token token = null;
+
+    public JsonReader(Iterator<Token> tokens) {
+        this(tokens, NumberParser.Mode.Default);
+    }
+
+    /**
+     * Create reader pulling tokens from given iterator.
+     * @param tokens going to be read
+     * @param numbers decides types of numbers read into json objects
+     */
+    public JsonReader(Iterator<Token> tokens, NumberParser.Mode numbers) {
+        this(tokens, numbers, null);
+    }
+
+    /**
+     * Create reader pulling tokens from given iterator.
+     * @param tokens going to be read
+     * @param numbers decides types of numbers read into json objects
+     * @param symbols caches names of members, or null
+     */
+    public JsonReader(Iterator<Token> tokens, NumberParser.Mode numbers, SymbolTable symbols) {
+        this.tokens = tokens;
+        this.numbers = numbers;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Pull next event.
+     * @return next event, End is returned repeatedly after whole value is read
+     */
+    public Event next() {
+        switch (this.expect) {
+            case Value:
+                return this.value(this.scan());
+            case FirstName: {
+                Token token = this.scan();
+                if (token.tag == Token.Type.ObjectEnd)
+                    return this.close(Event.ObjectEnd);
+                return this.name(token);
+            }
+            case Name:
+                return this.name(this.scan());
+            case Colon: {
+                Token token = this.scan();
+                if (token.tag != Token.Type.Colon)
+                    throw new InvalidToken(String.format("expected colon in json object but got %s", token));
+                return this.value(this.scan());
+            }
+            case NextMember: {
+                Token token = this.scan();
+                if (token.tag == Token.Type.Comma)
+                    return this.name(this.scan());
+                if (token.tag == Token.Type.ObjectEnd)
+                    return this.close(Event.ObjectEnd);
+                throw new InvalidToken(String.format("invalid json object %s", token));
+            }
+            case FirstElement: {
+                Token token = this.scan();
+                if (token.tag == Token.Type.ArrayEnd)
+                    return this.close(Event.ArrayEnd);
+                return this.value(token);
+            }
+            case NextElement: {
+                Token token = this.scan();
+                if (token.tag == Token.Type.Comma)
+                    return this.value(this.scan());
+                if (token.tag == Token.Type.ArrayEnd)
+                    return this.close(Event.ArrayEnd);
+                throw new InvalidToken(String.format("%s cannot be parsed as list", token));
+            }
+            default:
+                while (this.tokens.hasNext()) {
+                    Token token = this.tokens.next();
+                    if (token.tag != Token.Type.Space)
+                        throw new InvalidToken(String.format("unexpected %s after json", token));
+                }
+                this.token = null;
+                this.event = Event.End;
+                return this.event;
+        }
+    }
+
+    /**
+     * Get current event.
+     * @return event returned by last call of next, or null if not started
+     */
+    public Event event() {
+        return this.event;
+    }
+
+    /**
+     * Get count of containers enclosing current position.
+     * @return depth, 0 for top level
+     */
+    public int depth() {
+        return this.depth;
+    }
+
+    /**
+     * Get name of current member, only valid on Name event.
+     * @return unquoted member name
+     */
+    public String name() {
+        if (this.event != Event.Name)
+            throw new RuntimeException(String.format("no name for event %s", this.event));
+        if (this.symbols != null)
+            return this.symbols.symbol(this.token.source, this.token.start, this.token.end, this.scratch);
+        return JsonObject.parseString(this.token, this.scratch);
+    }
+
+    /**
+     * Get token of current value, only valid on Value event.
+     * @return value token
+     */
+    public Token token() {
+        if (this.event != Event.Value)
+            throw new RuntimeException(String.format("no value for event %s", this.event));
+        return this.token;
+    }
+
+    /**
+     * Skip current subtree:
+     *     0. on Name event, its value is skipped
+     *     1. on ObjectBegin or ArrayBegin event, stops on its matching end event
+     *     2. for other events nothing happens
+     */
+    public void skip() {
+        if (this.event == Event.Name)
+            this.next();
+        if (this.event != Event.ObjectBegin && this.event != Event.ArrayBegin)
+            return;
+        int depth = this.depth - 1;
+        while (this.depth > depth)
+            this.next();
+    }
+
+    /**
+     * Read current value (or value of current member) into json object.
+     * Reader stops on last event of that value.
+     * @return json object of current value
+     */
+    public JsonObject read() {
+        if (this.event == Event.Name)
+            this.next();
+        switch (this.event) {
+            case Value:
+                return new JsonObject(this.token, this.numbers, this.scratch);
+            case ObjectBegin: {
+                Map<String, JsonObject> map = new Members();
+                while (this.next() != Event.ObjectEnd) {
+                    String key = this.name();
+                    this.next();
+                    map.put(key, this.read());
+                }
+                return new JsonObject(map);
+            }
+            case ArrayBegin: {
+                List<JsonObject> array = new ArrayList<>();
+                while (this.next() != Event.ArrayEnd)
+                    array.add(this.read());
+                return new JsonObject(array);
+            }
+            default:
+                throw new RuntimeException(String.format("no value for event %s", this.event));
+        }
+    }
+
+    private Event value(Token token) {
+        this.token = token;
+        if (token.tag == Token.Type.ObjectBegin) {
+            this.open(true);
+            this.expect = Expect.FirstName;
+            this.event = Event.ObjectBegin;
+        } else if (token.tag == Token.Type.ArrayBegin) {
+            this.open(false);
+            this.expect = Expect.FirstElement;
+            this.event = Event.ArrayBegin;
+        } else if (JsonObject.assignable(token)) {
+            this.expect = this.after();
+            this.event = Event.Value;
+        } else {
+            throw new InvalidToken(String.format("%s cannot be parsed as value", token));
+        }
+        return this.event;
+    }
+
+    private Event name(Token token) {
+        if (token.tag != Token.Type.String)
+            throw new InvalidToken(String.format("json object key should be stirng but not %s", token));
+        if (token.length() == 2)
+            throw new InvalidToken("json object key cannot be empty string");
+        this.token = token;
+        this.expect = Expect.Colon;
+        this.event = Event.Name;
+        return this.event;
+    }
+
+    private void open(boolean object) {
+        if (this.depth == this.objects.length)
+            this.objects = Arrays.copyOf(this.objects, this.depth * 2);
+        this.objects[this.depth++] = object;
+    }
+
+    private Event close(Event event) {
+        this.depth--;
+        this.token = null;
+        this.expect = this.after();
+        this.event = event;
+        return this.event;
+    }
+
+    /**
+     * Expectation after a complete value, decided by enclosing container.
+     */
+    private Expect after() {
+        if (this.depth == 0)
+            return Expect.Done;
+        return this.objects[this.depth - 1] ? Expect.NextMember : Expect.NextElement;
+    }
+
+    /**
+     * Scan next token except spaces.
+     * @return next token
+     */
+    private Token scan() {
+        while (this.tokens.hasNext()) {
+            Token token = this.tokens.next();
+            if (token.tag != Token.Type.Space)
+                return token;
+        }
+        throw new InvalidToken("unexpected end of json");
+    }
+}
@@ -1,123 +1,195 @@
 package jsonp.decoder;
 
-import java.util.HashSet;
-import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 import jsonp.regex.Term;
 import jsonp.automata.*;
 
 /**
- * Build an empty automata for Lexer with just a single entry state and no transitions.
- * Then all patterns will be compiled as nfa so it could be added into this automata.
+ * Cursor of a compiled lexer, keeps current automata state and read buffer.
  * 
- * With structure like this:
- *            --epsilon--> term1
- *     (init) --epsilon--> term2
- *             --epsilon--> term3
- *            ...
+ * Chars could be pushed in one by one with Lexer.read, or a whole source could be
+ * scanned with Lexer.next, tokens of which are views of source without copying.
  * 
- * Each pattern will have an final state for indicate output.
- * Then this NFA will be parsed into an equivalant DFA automata.
+ * Cursor could be reused after reset, and should be for Lazy engine, whose runner
+ * caches states it has built. But cursor should NOT be shared between threads.
  */
 public class Lexer {
-    public final NFA nfa;
-    private NFAState enter;
-    private Set<NFAState> curretState;
-    private List<Character> buffer;
+
+    /**
+     * Engines could be used for running lexer automata.
+     * 
+     * DFA - determinize and minimize NFA, one table lookup for each char
+     * NFA - simulate compact NFA with PikeVM, for patterns blow up while determinizing
+     * Lazy - build DFA states on the fly into a bounded cache, fall back to NFA if cache thrashes
+     * Generated - specialize minimized DFA into a generated class with nested switches
+     */
+    public enum Engine {
+        DFA, NFA, Lazy, Generated
+    }
+
+    public final CompiledLexer compiled;
+    private final Runner runner;
+    private final StringBuilder buffer;
+    private CharSequence source = "";
+    private int position = 0;
+    private int limit = 0;
 
     public Lexer(List<Term> terms) {
-        this.buffer = new LinkedList<>();
-        this.curretState = new HashSet<>();
-
-        // If single term passed into lexer, just use it as NFA
-        if (terms.size() == 1) {
-            this.nfa = NFA.build(terms.getLast());
-            this.enter = this.nfa.enter;
-            this.reset();
-            return;
-        }
+        this(new CompiledLexer(terms));
+    }
 
-        // For multiple branches add them all
-        this.enter = new NFAState();
-        this.nfa = new NFA(this.enter, new HashSet<>(), new HashSet<>(), new ArrayList<>());
-        this.nfa.states.add(this.enter);
-        for (Term term : terms) {
-            NFA branch = NFA.build(term);
-            this.nfa.states.addAll(branch.states);
-            this.nfa.alphabet.addAll(branch.alphabet);
-            this.nfa.table.addAll(branch.table);
-            this.nfa.table.add(new TransitionRecord(this.enter, branch.enter, Term.Epsilon));
-        }
-        this.reset();
+    public Lexer(List<Term> terms, Engine engine) {
+        this(new CompiledLexer(terms, engine));
+    }
+
+    public Lexer(CompiledLexer compiled) {
+        this.compiled = compiled;
+        this.buffer = new StringBuilder();
+        this.runner = compiled.automaton.runner();
     }
 
     /**
-     * Clear current NFA state and read buffer.
+     * Clear current automata state and read buffer.
      */
     public void reset() {
-        this.buffer.clear();
-        this.curretState.clear();
-        this.curretState.add(this.enter);
+        this.buffer.setLength(0);
+        this.runner.reset();
+    }
+
+    /**
+     * Clear current state and start scanning given source with Lexer.next.
+     * @param source going to be scanned
+     */
+    public void reset(CharSequence source) {
+        this.reset(source, 0, source.length());
+    }
+
+    /**
+     * Clear current state and start scanning given range of source with Lexer.next.
+     * @param source going to be scanned
+     * @param from is index of first char
+     * @param to is index after last char
+     */
+    public void reset(CharSequence source, int from, int to) {
+        this.reset();
+        this.source = source;
+        this.position = from;
+        this.limit = to;
+    }
+
+    /**
+     * Get index of next char going to be scanned by Lexer.next.
+     * @return current position in source
+     */
+    public int position() {
+        return this.position;
+    }
+
+    /**
+     * Scan next token from source using maximal munch, without copying any char.
+     *
+     * Runner advances over source as far as possible, then label of its state decides the token.
+     * Tokens refer to ranges of source, see Token.
+     *
+     * @return next token, or null if source is exhausted
+     */
+    public Token next() {
+        int start = this.position;
+        if (start == this.limit)
+            return null;
+        this.runner.reset();
+        this.position = this.runner.advance(this.source, start, this.limit);
+        if (this.position == start)
+            throw new InvalidToken(String.format("invalid token %c", this.source.charAt(start)));
+        String label = this.runner.label();
+        if (label == null)
+            throw new InvalidToken(String.format("invalid token %s", this.source.subSequence(start, this.position)));
+        return new Token(this.source, start, this.position, label);
+    }
+
+    /**
+     * Iterate tokens of given source lazily, see Lexer.next.
+     * @param source going to be scanned
+     * @return token iterator
+     */
+    public Iterator<Token> tokens(CharSequence source) {
+        return this.tokens(source, 0, source.length());
+    }
+
+    /**
+     * Iterate tokens of given range of source lazily, tokens still refer to whole source.
+     * @param source going to be scanned
+     * @param from is index of first char
+     * @param to is index after last char
+     * @return token iterator
+     */
+    public Iterator<Token> tokens(CharSequence source, int from, int to) {
+        this.reset(source, from, to);
+        return new Iterator<>() {
+            private Token next = Lexer.this.next();
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Token next() {
+                if (this.next == null)
+                    throw new NoSuchElementException();
+                Token token = this.next;
+                this.next = Lexer.this.next();
+                return token;
+            }
+        };
     }
 
     /**
-     * Move current state set driven by input char.
+     * Move current state driven by input char.
      * 
-     * For each iteration of content given a char:
-     *     0. current state set equals epsilon-closure of current state: T = epsilon-closure(state)
-     *     1. enumerate all states which reachble from current state set T with given char: M = move(T, x)
-     *     2. current state set updates to epsilon-closure of M: T = epsilon-closure(M)
+     * For each iteration of content given a char, try to move runner of automata.
      * 
-     * While calculated M as empty set, means no transition allowed from current state with given char, then:
-     *     0. if current closure contains a final state, means we get an output
-     *     1. if current closure without a final state, raise a LexerError.
+     * While runner cannot move, means no transition allowed from current state with given char, then:
+     *     0. if current state is accepting, means we get an output
+     *     1. if current state is not accepting, raise a LexerError.
      * 
      * If char not given in, try to yield current buffer.
      * 
-     * If multiple final states matched, we select the one with smallest index, 
+     * If multiple rules matched, the one with smallest index will be selected,
      * which means the rule have higher priority.
      * 
      * @param c represents char reading in
-     * @return lexer record contains tag and joint buffer
+     * @return lexer record contains tag and joint buffer, or Token.Nothing
      */
-    public Token read(Character c) {
-        Set<NFAState> currentStateClosure = this.nfa.epsilonClosure(this.curretState);
-        List<NFAState> reachedFinalStates = currentStateClosure.stream()
-                .filter(state -> state.isFinal)
-                .sorted((stateA, stateB) -> stateA.index.compareTo(stateB.index))
-                .toList();
-        Set<NFAState> nextStepStates = this.nfa.reachable(currentStateClosure, c);
-
-        // If we could NOT reach any state from current closure - means we need to check returning
-        if (nextStepStates.isEmpty()) {
-            if (reachedFinalStates.isEmpty())
+    public Token read(char c) {
+        // If we could NOT reach any state from current state - means we need to check returning
+        if (!this.runner.step(c)) {
+            String label = this.runner.label();
+            if (label == null)
                 throw new InvalidToken(String.format("invalid token %c", c));
 
-            Token record = new Token(this.buffer, reachedFinalStates.getFirst().label);
-            this.buffer.clear();
-            this.buffer.add(c);
-            this.curretState = this.nfa.reachable(this.nfa.epsilonClosure(Set.of(this.enter)), c);
+            Token record = new Token(this.buffer.toString(), label);
+            this.buffer.setLength(0);
+            this.buffer.append(c);
+            this.runner.reset();
+            if (!this.runner.step(c))
+                throw new InvalidToken(String.format("invalid token %c", c));
             return record;
         }
 
-        // Otherwise we need to move to nextstep's epsilon-closure and return nothing
-        this.curretState = this.nfa.epsilonClosure(nextStepStates);
-        this.buffer.add(c);
-        return new Token();
+        // Otherwise runner already moved to next state, return nothing
+        this.buffer.append(c);
+        return Token.Nothing;
     }
 
     public Token read() {
-        Set<NFAState> currentStateClosure = this.nfa.epsilonClosure(this.curretState);
-        List<NFAState> reachedFinalStates = currentStateClosure.stream()
-                .filter(state -> state.isFinal)
-                .sorted((stateA, stateB) -> stateA.index.compareTo(stateB.index))
-                .toList();
-        Token record = new Token(this.buffer, reachedFinalStates.getFirst().label);
-        if (reachedFinalStates.isEmpty())
-            throw new InvalidToken(String.format("invalid token %s", record.content));
+        String label = this.runner.label();
+        Token record = new Token(this.buffer.toString(), label);
+        if (label == null)
+            throw new InvalidToken(String.format("invalid token %s", record));
         return record;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,49 @@
+package jsonp.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import jsonp.automata.DFA;
+
+/**
+ * Precompiled DFA tables of default decoder.
+ *
+ * Tables are generated while building (see exec plugin in pom.xml) into a resource next to this class,
+ * so a default decoder could start by reading them instead of compiling its grammar.
+ */
+public class LexerTables {
+    public static final String Resource = "json.lexer";
+
+    /**
+     * Load packaged tables.
+     * @return DFA of default grammar or null if tables are not packaged
+     * @throws RuntimeException if packaged tables cannot be read or are corrupted
+     */
+    public static DFA load() {
+        try (InputStream stream = LexerTables.class.getResourceAsStream(Resource)) {
+            if (stream == null)
+                return null;
+            return DFA.read(ByteBuffer.wrap(stream.readAllBytes()));
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("cannot read lexer tables %s", Resource), e);
+        }
+    }
+
+    /**
+     * Compile default grammar and write its tables into given file.
+     * @param args contains path of output file
+     * @throws IOException if writing failed
+     */
+    public static void main(String[] args) throws IOException {
+        DFA dfa = (DFA) new CompiledLexer(Decoder.grammar(), Lexer.Engine.DFA).automaton;
+        Path path = Path.of(args[0]);
+        Files.createDirectories(path.getParent());
+        try (OutputStream stream = Files.newOutputStream(path)) {
+            dfa.write(stream);
+        }
+    }
+}
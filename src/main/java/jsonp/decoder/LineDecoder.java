@@ -0,0 +1,311 @@
+package jsonp.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Decode newline delimited json (NDJSON / JSON Lines) in parallel.
+ *
+ * Input is cut into chunks of about given size, each chunk ends after a newline so no record
+ * is split, then chunks are decoded as tasks of a fork join pool:
+ *
+ *     bytes -> [ record \n record \n ... ] [ record \n ... ] ... -> tasks -> records
+ *
+ * Newline byte never shows inside a multi-byte UTF-8 char or a json string,
+ * so chunks could be cut by searching bytes only.
+ * Each task scans its chunk with its own lexer cursor, blank lines are skipped.
+ * At most a few chunks per worker are in flight, so memory does not grow with input size.
+ *
+ * Records could be pulled as an ordered stream, or pushed into a callback in any order.
+ */
+public class LineDecoder {
+    public static final int DefaultChunk = 1 << 20;
+
+    // Files are mapped window by window, since a single mapping could not be larger than 2GB
+    private static final int Window = 1 << 30;
+
+    public final Decoder decoder;
+    private final ForkJoinPool pool;
+    private final int chunk;
+    private final int ahead;
+
+    public LineDecoder(Decoder decoder) {
+        this(decoder, ForkJoinPool.commonPool(), DefaultChunk);
+    }
+
+    /**
+     * Create line decoder with given pool and chunk size.
+     * @param decoder used for decoding records
+     * @param pool runs decoding tasks
+     * @param chunk is expected bytes of each task
+     */
+    public LineDecoder(Decoder decoder, ForkJoinPool pool, int chunk) {
+        this.decoder = decoder;
+        this.pool = pool;
+        this.chunk = Math.max(1, chunk);
+        this.ahead = pool.getParallelism() * 2;
+    }
+
+    /**
+     * Decode records in remaining bytes of buffer, position of buffer is not changed.
+     * @param buffer contains UTF-8 encoded records
+     * @return records in order of input
+     */
+    public Stream<JsonObject> decode(ByteBuffer buffer) {
+        return this.ordered(this.slices(List.of(buffer.duplicate()).iterator()));
+    }
+
+    /**
+     * Decode records in remaining bytes of buffer, callback is called from worker threads
+     * in any order, and this method returns after all records are decoded.
+     * @param buffer contains UTF-8 encoded records
+     * @param callback receives each record
+     */
+    public void decode(ByteBuffer buffer, Consumer<JsonObject> callback) {
+        this.unordered(this.slices(List.of(buffer.duplicate()).iterator()), callback);
+    }
+
+    /**
+     * Decode records of file, which is mapped into memory.
+     * @param path of file contains UTF-8 encoded records
+     * @return records in order of input
+     */
+    public Stream<JsonObject> decode(Path path) {
+        return this.ordered(this.slices(this.windows(path).iterator()));
+    }
+
+    public void decode(Path path, Consumer<JsonObject> callback) {
+        this.unordered(this.slices(this.windows(path).iterator()), callback);
+    }
+
+    /**
+     * Decode records read from stream, stream is read lazily while records are pulled.
+     * @param stream contains UTF-8 encoded records
+     * @return records in order of input
+     */
+    public Stream<JsonObject> decode(InputStream stream) {
+        return this.ordered(this.reads(stream));
+    }
+
+    public void decode(InputStream stream, Consumer<JsonObject> callback) {
+        this.unordered(this.reads(stream), callback);
+    }
+
+    /**
+     * Decode all records of a chunk with a borrowed lexer cursor.
+     * @param chunk contains complete lines
+     * @return records in order
+     */
+    private List<JsonObject> lines(ByteBuffer chunk) {
+        CharSequence text = this.decoder.lexer.bytes
+                ? new ByteSequence(chunk)
+                : StandardCharsets.UTF_8.decode(chunk).toString();
+        Lexer lexer = this.decoder.lexer.borrow();
+        List<JsonObject> records = new ArrayList<>();
+        int from = 0;
+        boolean blank = true;
+        try {
+            for (int index = 0; index < text.length(); index++) {
+                char c = text.charAt(index);
+                if (c == '\n') {
+                    if (!blank)
+                        records.add(this.decoder.decode(lexer, text.subSequence(from, index)));
+                    from = index + 1;
+                    blank = true;
+                } else if (c != ' ' && c != '\t' && c != '\r') {
+                    blank = false;
+                }
+            }
+            if (!blank)
+                records.add(this.decoder.decode(lexer, text.subSequence(from, text.length())));
+        } finally {
+            this.decoder.lexer.release(lexer);
+        }
+        return records;
+    }
+
+    /**
+     * Pull decoded chunks in order, keeping a few tasks ahead of consumer.
+     */
+    private Stream<JsonObject> ordered(Iterator<ByteBuffer> chunks) {
+        Iterator<List<JsonObject>> results = new Iterator<>() {
+            private final Deque<ForkJoinTask<List<JsonObject>>> pending = new ArrayDeque<>();
+
+            private void fill() {
+                while (this.pending.size() < LineDecoder.this.ahead && chunks.hasNext()) {
+                    ByteBuffer chunk = chunks.next();
+                    this.pending.add(LineDecoder.this.pool.submit(() -> LineDecoder.this.lines(chunk)));
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                this.fill();
+                return !this.pending.isEmpty();
+            }
+
+            @Override
+            public List<JsonObject> next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                return this.pending.poll().join();
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .flatMap(List::stream);
+    }
+
+    /**
+     * Push decoded records into callback as soon as their chunks are done.
+     * If any chunk fails, tasks not started yet are cancelled, and running ones are waited for,
+     * so callback is never called after this method throws.
+     */
+    private void unordered(Iterator<ByteBuffer> chunks, Consumer<JsonObject> callback) {
+        Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+        try {
+            while (chunks.hasNext()) {
+                if (pending.size() == this.ahead)
+                    pending.poll().join();
+                ByteBuffer chunk = chunks.next();
+                pending.add(this.pool.submit(() -> this.lines(chunk).forEach(callback)));
+            }
+            while (!pending.isEmpty())
+                pending.poll().join();
+        } catch (RuntimeException | Error e) {
+            for (ForkJoinTask<?> task : pending)
+                task.cancel(false);
+            for (ForkJoinTask<?> task : pending)
+                task.quietlyJoin();
+            throw e;
+        }
+    }
+
+    /**
+     * Cut buffers into chunks ending after newlines, buffers should also end after newlines.
+     */
+    private Iterator<ByteBuffer> slices(Iterator<ByteBuffer> buffers) {
+        return new Iterator<>() {
+            private ByteBuffer current = null;
+
+            @Override
+            public boolean hasNext() {
+                while ((this.current == null || !this.current.hasRemaining()) && buffers.hasNext())
+                    this.current = buffers.next();
+                return this.current != null && this.current.hasRemaining();
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                int from = this.current.position();
+                int to = this.current.limit();
+                int end = Math.min(to, from + LineDecoder.this.chunk);
+                while (end < to && this.current.get(end - 1) != '\n')
+                    end++;
+                ByteBuffer slice = this.current.slice(from, end - from);
+                this.current.position(end);
+                return slice;
+            }
+        };
+    }
+
+    /**
+     * Map file as windows ending after newlines, channel could be closed after mapping.
+     */
+    private List<ByteBuffer> windows(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<ByteBuffer> windows = new ArrayList<>();
+            long size = channel.size();
+            long base = 0;
+            int window = Window;
+            while (base < size) {
+                long length = Math.min(window, size - base);
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+                int end = (int) length;
+                if (base + length < size) {
+                    while (end > 0 && mapped.get(end - 1) != '\n')
+                        end--;
+                    if (end == 0) {
+                        // A single line is larger than window
+                        if (window == Integer.MAX_VALUE)
+                            throw new InvalidToken("line is too large for mapping");
+                        window = (int) Math.min(Integer.MAX_VALUE, window * 2L);
+                        continue;
+                    }
+                }
+                windows.add(mapped.slice(0, end));
+                base += end;
+            }
+            return windows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Read stream into chunks ending after newlines, bytes after last newline are carried into next chunk.
+     */
+    private Iterator<ByteBuffer> reads(InputStream stream) {
+        return new Iterator<>() {
+            private byte[] carry = new byte[0];
+            private boolean exhausted = false;
+
+            @Override
+            public boolean hasNext() {
+                return !this.exhausted || this.carry.length > 0;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    byte[] bytes = Arrays.copyOf(this.carry, this.carry.length + LineDecoder.this.chunk);
+                    int length = this.carry.length;
+                    while (true) {
+                        int count = stream.readNBytes(bytes, length, bytes.length - length);
+                        length += count;
+                        if (length < bytes.length) {
+                            this.exhausted = true;
+                            this.carry = new byte[0];
+                            return ByteBuffer.wrap(bytes, 0, length);
+                        }
+                        int end = length;
+                        while (end > 0 && bytes[end - 1] != '\n')
+                            end--;
+                        if (end > 0) {
+                            this.carry = Arrays.copyOfRange(bytes, end, length);
+                            return ByteBuffer.wrap(bytes, 0, end);
+                        }
+                        // No newline in whole chunk, read more
+                        bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package jsonp.decoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import jsonp.automata.Runner;
+
+/**
+ * Tokenize UTF-8 bytes of a file mapped into memory, so file content stays in page cache
+ * instead of heap. Lexer must be able to scan bytes directly, see CompiledLexer.bytes.
+ *
+ * A single mapping could not be larger than 2GB, so file is mapped window by window:
+ *
+ *     file:   [ ... | window                          | ... ]
+ *                    ^base   ^start   ^position
+ *
+ * When a token reaches end of window, a new window is mapped from start of that token and
+ * scanning goes on with same runner state. Window is doubled if a single token is larger than it.
+ * Tokens refer to their windows, which are unmapped once no token refers to them.
+ *
+ * Token stream is a cursor, it should NOT be shared between threads.
+ */
+public class MappedTokenStream implements Iterator<Token> {
+    public static final int DefaultWindow = 1 << 30;
+
+    private final FileChannel channel;
+    private final Runner runner;
+    private final long size;
+    private int window;
+    private long base = 0;
+    private ByteSequence bytes;
+    private int position = 0;
+    private Token next = null;
+
+    public MappedTokenStream(CompiledLexer lexer, FileChannel channel) throws IOException {
+        this(lexer, channel, DefaultWindow);
+    }
+
+    /**
+     * Create token stream over file with given window size.
+     * @param lexer used for scanning, which should accept bytes
+     * @param channel of file going to be tokenized
+     * @param window is maximum bytes mapped at once
+     * @throws IOException if file cannot be mapped
+     */
+    public MappedTokenStream(CompiledLexer lexer, FileChannel channel, int window) throws IOException {
+        if (!lexer.bytes)
+            throw new RuntimeException("lexer cannot scan UTF-8 bytes directly");
+        this.channel = channel;
+        this.runner = lexer.automaton.runner();
+        this.size = channel.size();
+        this.window = Math.max(1, window);
+        this.map(0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null)
+            this.next = this.scan();
+        return this.next != null;
+    }
+
+    @Override
+    public Token next() {
+        if (!this.hasNext())
+            throw new NoSuchElementException();
+        Token token = this.next;
+        this.next = null;
+        return token;
+    }
+
+    /**
+     * Scan next token using maximal munch, same as Lexer does.
+     * @return next token, or null if file is exhausted
+     */
+    private Token scan() {
+        this.runner.reset();
+        int start = this.position;
+        while (true) {
+            int length = this.bytes.length();
+            this.position = this.runner.advance(this.bytes, this.position, length);
+            boolean last = this.base + length == this.size;
+            if (this.position == length && !last) {
+                // Token reaches end of window, map next window from its start
+                if (start == 0) {
+                    if (this.window == Integer.MAX_VALUE)
+                        throw new InvalidToken("token is too large for mapping");
+                    this.window = (int) Math.min(Integer.MAX_VALUE, this.window * 2L);
+                }
+                this.remap(start);
+                start = 0;
+                continue;
+            }
+
+            if (this.position == start) {
+                if (this.position == length)
+                    return null;
+                throw new InvalidToken(String.format("invalid token %c", this.bytes.charAt(start)));
+            }
+            String label = this.runner.label();
+            if (label == null)
+                throw new InvalidToken(String.format("invalid token %s", this.bytes.subSequence(start, this.position)));
+            return new Token(this.bytes, start, this.position, label);
+        }
+    }
+
+    /**
+     * Map next window from given offset of current window, position is kept on same byte.
+     */
+    private void remap(int offset) {
+        this.position -= offset;
+        this.map(this.base + offset);
+    }
+
+    private void map(long base) {
+        try {
+            long length = Math.min(this.window, this.size - base);
+            this.base = base;
+            this.bytes = new ByteSequence(this.channel.map(FileChannel.MapMode.READ_ONLY, base, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package jsonp.decoder;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Members of a json object.
+ *
+ * Most objects only have a few members, so they are kept in a flat array
+ * and found by a linear scan, in order of insertion:
+ *
+ *     slots = [key0, value0, key1, value1, ...]
+ *
+ * Comparing a few keys is cheaper than hashing a new key, and there are no entry nodes
+ * or bucket table. Once an object grows over Threshold members, they are moved into a HashMap.
+ */
+class Members extends AbstractMap<String, JsonObject> {
+    static final int Threshold = 8;
+
+    private Object[] slots = new Object[4];
+    private int size = 0;
+    private HashMap<String, JsonObject> map = null;
+
+    @Override
+    public int size() {
+        return this.map != null ? this.map.size() : this.size;
+    }
+
+    @Override
+    public JsonObject get(Object key) {
+        if (this.map != null)
+            return this.map.get(key);
+        int index = this.find(key);
+        return index < 0 ? null : (JsonObject) this.slots[index + 1];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (this.map != null)
+            return this.map.containsKey(key);
+        return this.find(key) >= 0;
+    }
+
+    @Override
+    public JsonObject put(String key, JsonObject value) {
+        if (this.map != null)
+            return this.map.put(key, value);
+        int index = this.find(key);
+        if (index >= 0) {
+            JsonObject previous = (JsonObject) this.slots[index + 1];
+            this.slots[index + 1] = value;
+            return previous;
+        }
+        if (this.size == Threshold) {
+            this.map = new HashMap<>();
+            for (index = 0; index < this.size * 2; index += 2)
+                this.map.put((String) this.slots[index], (JsonObject) this.slots[index + 1]);
+            this.slots = null;
+            this.size = 0;
+            return this.map.put(key, value);
+        }
+        if (this.size * 2 == this.slots.length)
+            this.slots = Arrays.copyOf(this.slots, Math.max(4, this.slots.length * 2));
+        this.slots[this.size * 2] = key;
+        this.slots[this.size * 2 + 1] = value;
+        this.size++;
+        return null;
+    }
+
+    /**
+     * Release unused slots after all members are added.
+     */
+    void trim() {
+        if (this.slots != null && this.slots.length > this.size * 2)
+            this.slots = Arrays.copyOf(this.slots, this.size * 2);
+    }
+
+    private int find(Object key) {
+        for (int index = 0; index < this.size * 2; index += 2)
+            if (this.slots[index].equals(key))
+                return index;
+        return -1;
+    }
+
+    @Override
+    public Set<Map.Entry<String, JsonObject>> entrySet() {
+        if (this.map != null)
+            return this.map.entrySet();
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return Members.this.size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, JsonObject>> iterator() {
+                return new Iterator<>() {
+                    private int index = 0;
+                    private boolean removable = false;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.index < Members.this.size * 2;
+                    }
+
+                    @Override
+                    public Map.Entry<String, JsonObject> next() {
+                        if (!this.hasNext())
+                            throw new NoSuchElementException();
+                        Object[] slots = Members.this.slots;
+                        this.index += 2;
+                        this.removable = true;
+                        return new AbstractMap.SimpleImmutableEntry<>(
+                                (String) slots[this.index - 2], (JsonObject) slots[this.index - 1]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (!this.removable)
+                            throw new IllegalStateException();
+                        this.removable = false;
+                        Object[] slots = Members.this.slots;
+                        int size = Members.this.size * 2;
+                        System.arraycopy(slots, this.index, slots, this.index - 2, size - this.index);
+                        slots[size - 2] = null;
+                        slots[size - 1] = null;
+                        Members.this.size--;
+                        this.index -= 2;
+                    }
+                };
+            }
+        };
+    }
+}
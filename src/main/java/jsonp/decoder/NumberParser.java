@@ -0,0 +1,256 @@
+package jsonp.decoder;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Parse number tokens straight from their source range, without building a string first.
+ *
+ * Digits are accumulated into a 64 bits decimal mantissa w and a power of ten q,
+ * up to 19 significant digits, the rest only moves q:
+ *
+ *     -12.5e3 -> w = 125, q = -1 + 3
+ *
+ * Integers with at most 18 digits are exact in w, so they become Integer or Long directly.
+ * Decimals become double by the first path which applies:
+ *
+ *     0. Clinger: w <= 2^53 and |q| <= 22, both are exact doubles, one rounding of w * 10^q or w / 10^-q
+ *     1. Eisel-Lemire: w * 5^q with a truncated 128 bits power of five, correctly rounded
+ *     2. Double.parseDouble, only if mantissa was truncated and rounding of w and w + 1 differs
+ *
+ * Longer integers fall back to BigInteger, and decimals fall back to BigDecimal as Mode asks.
+ */
+public class NumberParser {
+
+    public enum Mode {
+        // Integer, Long or BigInteger for integers, Double for decimals
+        Default,
+        // Like Default, but decimals which cannot be recovered from a double become BigDecimal
+        Lossless,
+        // Integer, Long or BigInteger for integers, BigDecimal for decimals
+        Decimal
+    }
+
+    // Digits of a double always survive a round trip if there are no more than 15 of them,
+    // up to 17 digits may or may not, and shortest digits of a double never exceed 17
+    private static final int ExactDigits = 15;
+    private static final int RoundTripDigits = 17;
+    private static final int MaxDigits = 19;
+
+    private static final int SmallestPower = -342;
+    private static final int LargestPower = 308;
+    private static final double[] Powers = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // Truncated 128 bits powers of five from 5^-342 to 5^308, high and low 64 bits of each
+    private static final long[] Fives = fives();
+
+    private NumberParser() {
+    }
+
+    /**
+     * Parse a number in given range of source, which must match number rule of json grammar.
+     * @param source contains number
+     * @param start of number
+     * @param end of number
+     * @param mode decides types of parsed numbers
+     * @return parsed number
+     */
+    public static Number parse(CharSequence source, int start, int end, Mode mode) {
+        int index = start;
+        boolean negative = source.charAt(index) == '-';
+        if (negative)
+            index++;
+
+        long mantissa = 0;
+        int digits = 0, zeros = 0, dropped = 0, power = 0;
+        boolean integer = true;
+        for (; index < end; index++) {
+            char c = source.charAt(index);
+            if (c == '.') {
+                integer = false;
+                continue;
+            }
+            if (c == 'e' || c == 'E')
+                break;
+            int digit = c - '0';
+            if (digits == 0 && digit == 0) {
+                if (!integer)
+                    power--;
+                continue;
+            }
+            zeros = digit == 0 ? zeros + 1 : 0;
+            if (digits < MaxDigits) {
+                mantissa = mantissa * 10 + digit;
+                if (!integer)
+                    power--;
+            } else {
+                dropped++;
+                if (integer)
+                    power++;
+            }
+            digits++;
+        }
+        if (index < end) {
+            integer = false;
+            index++;
+            boolean negativeExponent = source.charAt(index) == '-';
+            if (negativeExponent || source.charAt(index) == '+')
+                index++;
+            int exponent = 0;
+            for (; index < end; index++)
+                // Larger exponents could only produce zero or infinity
+                if (exponent < 100000)
+                    exponent = exponent * 10 + source.charAt(index) - '0';
+            power += negativeExponent ? -exponent : exponent;
+        }
+
+        if (integer) {
+            if (digits <= MaxDigits - 1)
+                return box(negative ? -mantissa : mantissa);
+            BigInteger big = new BigInteger(source.subSequence(start, end).toString());
+            return big.bitLength() < Long.SIZE ? (Number) big.longValue() : big;
+        }
+        if (mode == Mode.Decimal)
+            return new BigDecimal(source.subSequence(start, end).toString());
+
+        double value = toDouble(mantissa, power, dropped > 0);
+        if (Double.isNaN(value))
+            value = Double.parseDouble(source.subSequence(start, end).toString());
+        else if (negative)
+            value = -value;
+        if (mode == Mode.Lossless && lossy(source, start, end, value, digits - zeros, mantissa))
+            return new BigDecimal(source.subSequence(start, end).toString());
+        return value;
+    }
+
+    /**
+     * Check if parsed double loses any digit of a decimal.
+     * @param significant is count of digits without leading and trailing zeros
+     * @return if decimal cannot be recovered from double
+     */
+    private static boolean lossy(CharSequence source, int start, int end, double value, int significant, long mantissa) {
+        if (Double.isInfinite(value) || (value == 0 && mantissa != 0) || significant > RoundTripDigits)
+            return true;
+        if (significant <= ExactDigits)
+            return false;
+        BigDecimal exact = new BigDecimal(source.subSequence(start, end).toString());
+        return exact.compareTo(new BigDecimal(Double.toString(value))) != 0;
+    }
+
+    private static Number box(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+            return (int) value;
+        return value;
+    }
+
+    /**
+     * Convert w * 10^q into nearest double.
+     * @param mantissa is w
+     * @param power is q
+     * @param truncated if more digits were dropped from w
+     * @return nearest double, or NaN if it cannot be decided
+     */
+    private static double toDouble(long mantissa, int power, boolean truncated) {
+        if (mantissa == 0)
+            return 0.0;
+        // Mantissa of 19 digits is unsigned, so it is compared as unsigned
+        if (!truncated && Long.compareUnsigned(mantissa, 1L << 53) <= 0 && power >= -22 && power <= 22)
+            return power < 0 ? mantissa / Powers[-power] : mantissa * Powers[power];
+        double value = lemire(mantissa, power);
+        // Dropped digits put real value between w and w + 1
+        if (truncated && value != lemire(mantissa + 1, power))
+            return Double.NaN;
+        return value;
+    }
+
+    /**
+     * Eisel-Lemire algorithm, see "Number Parsing at a Gigabyte per Second" by Daniel Lemire.
+     *
+     * Product of normalized w and 128 bits 5^q keeps enough bits for deciding rounding,
+     * and power of two is approximated from q by 217706 / 2^16 ~ log2(10).
+     *
+     * @param mantissa is w, not zero
+     * @param power is q
+     * @return nearest double of w * 10^q
+     */
+    private static double lemire(long mantissa, int power) {
+        if (power < SmallestPower)
+            return 0.0;
+        if (power > LargestPower)
+            return Double.POSITIVE_INFINITY;
+        int shift = Long.numberOfLeadingZeros(mantissa);
+        mantissa <<= shift;
+        int index = 2 * (power - SmallestPower);
+        long high = Math.unsignedMultiplyHigh(mantissa, Fives[index]);
+        long low = mantissa * Fives[index];
+        // Only 55 upper bits are needed, lower part matters only if they might carry
+        long precision = -1L >>> 55;
+        if ((high & precision) == precision) {
+            long secondHigh = Math.unsignedMultiplyHigh(mantissa, Fives[index + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0)
+                high++;
+        }
+
+        int upper = (int) (high >>> 63);
+        long bits = high >>> (upper + 64 - 52 - 3);
+        int exponent = (((152170 + 65536) * power) >> 16) + 63 + upper - shift + 1023;
+        if (exponent <= 0) {
+            // Subnormal
+            if (-exponent + 1 >= 64)
+                return 0.0;
+            bits >>>= -exponent + 1;
+            bits += bits & 1;
+            bits >>>= 1;
+            exponent = bits < 1L << 52 ? 0 : 1;
+            return Double.longBitsToDouble(bits & ((1L << 52) - 1) | (long) exponent << 52);
+        }
+        // Exactly halfway between two doubles, round to even
+        if (Long.compareUnsigned(low, 1) <= 0 && power >= -4 && power <= 23 && (bits & 3) == 1
+                && bits << (upper + 64 - 52 - 3) == high)
+            bits &= ~1L;
+        bits += bits & 1;
+        bits >>>= 1;
+        if (bits >= 2L << 52) {
+            bits = 1L << 52;
+            exponent++;
+        }
+        if (exponent >= 0x7FF)
+            return Double.POSITIVE_INFINITY;
+        return Double.longBitsToDouble(bits & ((1L << 52) - 1) | (long) exponent << 52);
+    }
+
+    /**
+     * Compute 128 bits powers of five, most significant bit of each is set:
+     *
+     *     q >= 0 -> 5^q truncated to 128 bits
+     *     q < 0  -> 2^b / 5^-q rounded up, b is large enough to keep 128 bits
+     *
+     * @return high and low 64 bits of each power
+     */
+    private static long[] fives() {
+        long[] fives = new long[2 * (LargestPower - SmallestPower + 1)];
+        BigInteger five = BigInteger.valueOf(5);
+        for (int power = SmallestPower; power <= LargestPower; power++) {
+            BigInteger value;
+            if (power >= 0) {
+                value = five.pow(power);
+                int length = value.bitLength();
+                value = length > 128 ? value.shiftRight(length - 128) : value.shiftLeft(128 - length);
+            } else {
+                BigInteger divisor = five.pow(-power);
+                int length = divisor.bitLength();
+                int b = power >= -27 ? length + 127 : 2 * length + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(divisor).add(BigInteger.ONE);
+                if (value.bitLength() > 128)
+                    value = value.shiftRight(value.bitLength() - 128);
+            }
+            int index = 2 * (power - SmallestPower);
+            fives[index] = value.shiftRight(64).longValue();
+            fives[index + 1] = value.longValue();
+        }
+        return fives;
+    }
+}
@@ -0,0 +1,313 @@
+package jsonp.decoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Decode a huge top level array on multiple cores by speculation.
+ *
+ * Text is cut into parts and each part is pre-scanned in parallel for structure,
+ * tracking depth of brackets and whether chars are inside a string:
+ *
+ *     0. each part is scanned assuming it starts outside any string, recording commas and
+ *        their depth relative to start of part, end state of a start inside string is also tracked
+ *     1. real start state of each part is decided from end states of parts before it,
+ *        parts with wrong assumption are scanned again in parallel
+ *     2. commas at depth 1 separate elements of top level array
+ *
+ * Then elements are divided into groups of similar size, groups are parsed in parallel
+ * with their own lexer cursors and stitched back in order.
+ *
+ * Small texts, texts which are not an array, and any failure of speculation fall back to
+ * sequential decoding, which also reports errors of malformed json.
+ */
+public class ParallelDecoder {
+    public static final int DefaultThreshold = 1 << 20;
+
+    public final Decoder decoder;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int parts;
+
+    public ParallelDecoder(Decoder decoder) {
+        this(decoder, ForkJoinPool.commonPool(), DefaultThreshold);
+    }
+
+    /**
+     * Create parallel decoder with given pool.
+     * @param decoder used for decoding elements
+     * @param pool runs scanning and parsing tasks
+     * @param threshold is minimal length of text decoded in parallel
+     */
+    public ParallelDecoder(Decoder decoder, ForkJoinPool pool, int threshold) {
+        this.decoder = decoder;
+        this.pool = pool;
+        this.threshold = threshold;
+        this.parts = pool.getParallelism() * 4;
+    }
+
+    /**
+     * Decode json text, top level array is decoded in parallel if it is large enough.
+     * @param text contains json
+     * @return parsed json object
+     */
+    public JsonObject decode(CharSequence text) {
+        if (text.length() >= this.threshold) {
+            JsonObject result = this.speculate(text);
+            if (result != null)
+                return result;
+        }
+        return this.decoder.decodeStrictly(text);
+    }
+
+    /**
+     * Decode UTF-8 encoded json, bytes are scanned directly if lexer allows.
+     * @param bytes contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(byte[] bytes) {
+        if (!this.decoder.lexer.bytes)
+            return this.decode(new String(bytes, StandardCharsets.UTF_8));
+        return this.decode(new ByteSequence(bytes));
+    }
+
+    /**
+     * Structure of a part of text.
+     */
+    private static class Scan {
+        final int from;
+        final int to;
+        final boolean string;
+        final boolean escaped;
+
+        // State after scanning
+        boolean endString = false;
+        boolean endEscaped = false;
+        int depth = 0;
+        int lowest = 0;
+
+        // End state if part starts inside a string, only tracked for speculation
+        boolean guessString = false;
+        boolean guessEscaped = false;
+
+        int[] commas = new int[16];
+        int[] depths = new int[16];
+        int count = 0;
+
+        Scan(int from, int to, boolean string, boolean escaped) {
+            this.from = from;
+            this.to = to;
+            this.string = string;
+            this.escaped = escaped;
+        }
+
+        /**
+         * Scan structure of part from its start state.
+         */
+        Scan run(CharSequence text) {
+            boolean string = this.string, escaped = this.escaped;
+            int depth = 0;
+            for (int index = this.from; index < this.to; index++) {
+                char c = text.charAt(index);
+                if (string) {
+                    if (escaped)
+                        escaped = false;
+                    else if (c == '\\')
+                        escaped = true;
+                    else if (c == '"')
+                        string = false;
+                    continue;
+                }
+                switch (c) {
+                    case '"':
+                        string = true;
+                        break;
+                    case '[':
+                    case '{':
+                        depth++;
+                        break;
+                    case ']':
+                    case '}':
+                        depth--;
+                        this.lowest = Math.min(this.lowest, depth);
+                        break;
+                    case ',':
+                        if (this.count == this.commas.length) {
+                            this.commas = Arrays.copyOf(this.commas, this.count * 2);
+                            this.depths = Arrays.copyOf(this.depths, this.count * 2);
+                        }
+                        this.commas[this.count] = index;
+                        this.depths[this.count++] = depth;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            this.endString = string;
+            this.endEscaped = escaped;
+            this.depth = depth;
+            return this;
+        }
+
+        /**
+         * Track only end state of strings if part starts inside a string.
+         */
+        Scan guess(CharSequence text) {
+            boolean string = true, escaped = false;
+            for (int index = this.from; index < this.to; index++) {
+                char c = text.charAt(index);
+                if (!string) {
+                    if (c == '"')
+                        string = true;
+                } else if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    string = false;
+                }
+            }
+            this.guessString = string;
+            this.guessEscaped = escaped;
+            return this;
+        }
+    }
+
+    /**
+     * Try decoding top level array in parallel.
+     * @param text contains json
+     * @return parsed array, or null if sequential decoding should be used
+     */
+    private JsonObject speculate(CharSequence text) {
+        int begin = 0, end = text.length();
+        while (begin < end && space(text.charAt(begin)))
+            begin++;
+        while (end > begin && space(text.charAt(end - 1)))
+            end--;
+        if (end - begin < 2 || text.charAt(begin) != '[' || text.charAt(end - 1) != ']')
+            return null;
+
+        List<Integer> separators = this.separators(text, begin + 1, end - 1);
+        if (separators == null || separators.size() < this.parts)
+            return null;
+
+        // Cut elements into groups of similar size at separators
+        List<int[]> groups = new ArrayList<>();
+        int from = begin + 1;
+        int size = (end - begin) / this.parts;
+        for (int separator : separators)
+            if (separator - from >= size) {
+                groups.add(new int[] { from, separator });
+                from = separator + 1;
+            }
+        groups.add(new int[] { from, end - 1 });
+
+        List<ForkJoinTask<List<JsonObject>>> tasks = new ArrayList<>();
+        for (int[] group : groups)
+            tasks.add(this.pool.submit(() -> this.elements(text, group[0], group[1])));
+        List<JsonObject> array = new ArrayList<>(separators.size() + 1);
+        try {
+            for (ForkJoinTask<List<JsonObject>> task : tasks)
+                array.addAll(task.join());
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return new JsonObject(array);
+    }
+
+    /**
+     * Find commas separating elements of top level array by speculative pre-scan.
+     * @param text contains json
+     * @param from is index after [
+     * @param to is index of ]
+     * @return indexes of separators, or null if structure is broken
+     */
+    private List<Integer> separators(CharSequence text, int from, int to) {
+        int length = Math.max(1, (to - from + this.parts - 1) / this.parts);
+        List<ForkJoinTask<Scan>> tasks = new ArrayList<>();
+        for (int start = from; start < to; start += length) {
+            Scan scan = new Scan(start, Math.min(to, start + length), false, false);
+            tasks.add(this.pool.submit(() -> scan.run(text).guess(text)));
+        }
+        Scan[] scans = new Scan[tasks.size()];
+        for (int index = 0; index < scans.length; index++)
+            scans[index] = tasks.get(index).join();
+
+        // Decide real start states, scan again for wrong guesses
+        boolean string = false, escaped = false;
+        List<ForkJoinTask<Scan>> retries = new ArrayList<>();
+        for (int index = 0; index < scans.length; index++) {
+            Scan scan = scans[index];
+            boolean startString = string, startEscaped = escaped;
+            if (!startString) {
+                string = scan.endString;
+                escaped = scan.endEscaped;
+                continue;
+            }
+            if (!startEscaped) {
+                string = scan.guessString;
+                escaped = scan.guessEscaped;
+            } else {
+                // Rare case of a part starts just after a backslash
+                Scan exact = new Scan(scan.from, scan.to, true, true).run(text);
+                string = exact.endString;
+                escaped = exact.endEscaped;
+            }
+            Scan retry = new Scan(scan.from, scan.to, startString, startEscaped);
+            final int position = index;
+            retries.add(this.pool.submit(() -> {
+                scans[position] = retry.run(text);
+                return retry;
+            }));
+        }
+        if (string)
+            return null;
+        for (ForkJoinTask<Scan> retry : retries)
+            retry.join();
+
+        List<Integer> separators = new ArrayList<>();
+        int depth = 0;
+        for (Scan scan : scans) {
+            if (depth + scan.lowest < 0)
+                return null;
+            for (int index = 0; index < scan.count; index++)
+                if (depth + scan.depths[index] == 0)
+                    separators.add(scan.commas[index]);
+            depth += scan.depth;
+        }
+        return depth == 0 ? separators : null;
+    }
+
+    /**
+     * Parse elements separated by commas in given range.
+     * @return elements in order
+     */
+    private List<JsonObject> elements(CharSequence text, int from, int to) {
+        Lexer lexer = this.decoder.lexer.borrow();
+        try {
+            Iterator<Token> tokens = lexer.tokens(text, from, to);
+            List<JsonObject> elements = new ArrayList<>();
+            while (true) {
+                elements.add(this.decoder.parser(tokens).parse());
+                Token token = null;
+                while (tokens.hasNext() && (token = tokens.next()).tag == Token.Type.Space)
+                    token = null;
+                if (token == null)
+                    return elements;
+                if (token.tag != Token.Type.Comma)
+                    throw new InvalidToken(String.format("%s cannot be parsed as list", token));
+            }
+        } finally {
+            this.decoder.lexer.release(lexer);
+        }
+    }
+
+    private static boolean space(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
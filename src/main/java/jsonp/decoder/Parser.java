@@ -2,14 +2,15 @@ package jsonp.decoder;
 
 import java.util.Map;
 import java.util.List;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * JSON LL(1) grammer parser using recursive descent.
- * 
+ * JSON LL(1) grammer parser.
+ *
  * Grammer:
- * 
+ *
  * obj -> { members }
  * members -> pair members' | eps
  * members' -> , pair members' | eps
@@ -18,137 +19,172 @@ import java.util.LinkedList;
  * elem -> value elem' | eps
  * elem' -> , value elem' | eps
  * value -> obj | array | number | string | true | false | null
+ *
+ * Instead of recursive descent, productions are expanded in a loop with an explicit stack
+ * of open containers, so neither long collections nor deep nesting grow java stack:
+ *
+ *     0. a value starts: scalars are completed at once, a non-empty container is pushed
+ *        and loop continues with its first value
+ *     1. a value completes: it is added into container on top of stack, then a comma
+ *        starts next value, or a closing bracket completes and pops that container
+ *
+ * Tokens are pulled one by one while parsing, so they could come from a TokenStream
+ * without being collected first.
  */
 public class Parser {
-    private List<Token> tokens;
+    private Iterator<Token> tokens;
+    private final NumberParser.Mode numbers;
+    private final SymbolTable symbols;
+    private final StringBuilder scratch = new StringBuilder();
     private Token currentToken;
-    private Integer index;
+    private Frame[] stack = new Frame[16];
+    private int depth = 0;
+
+    /**
+     * Container being parsed, either map or array is set.
+     */
+    private static class Frame {
+        final Map<String, JsonObject> map;
+        final List<JsonObject> array;
+        String key;
+
+        Frame(Map<String, JsonObject> map, List<JsonObject> array) {
+            this.map = map;
+            this.array = array;
+        }
+    }
 
     public Parser(List<Token> tokens) {
-        this.tokens = tokens.stream().filter(token -> token.tag != Token.Type.Space).toList();
-        this.index = 0;
+        this(tokens.iterator());
     }
 
-    /**
-     * Parse tokens to object.
-     * @return parsed json object
-     */
-    private Map<String, JsonObject> object() {
-        Map<String, JsonObject> map = new HashMap<>();
-        return members(map);
+    public Parser(Iterator<Token> tokens) {
+        this(tokens, NumberParser.Mode.Default);
     }
 
     /**
-     * Parse tokens to member into object.
-     * @param map contains all parsed json object
-     * @return parsed json object
+     * Create parser pulling tokens from given iterator.
+     * @param tokens going to be parsed
+     * @param numbers decides types of parsed numbers
      */
-    private Map<String, JsonObject> members(Map<String, JsonObject> map) {
-        Token token = this.scan();
-        if (token.tag == Token.Type.ObjectEnd)
-            return map;
-        return member(pair(map));
+    public Parser(Iterator<Token> tokens, NumberParser.Mode numbers) {
+        this(tokens, numbers, null);
     }
 
     /**
-     * Parse single token into object.
-     * @param map contains all parsed json object
-     * @return parsed json object
+     * Create parser pulling tokens from given iterator.
+     * @param tokens going to be parsed
+     * @param numbers decides types of parsed numbers
+     * @param symbols caches object keys, or null
      */
-    private Map<String, JsonObject> member(Map<String, JsonObject> map) {
-        Token token = this.scan();
-        if (token.tag == Token.Type.Comma) {
-            this.scan();
-            return member(pair(map));
-        }
-        if (token.tag == Token.Type.ObjectEnd) {
-            return map;
-        }
-        throw new InvalidToken(String.format("invalid json object %s", token.content));
+    public Parser(Iterator<Token> tokens, NumberParser.Mode numbers, SymbolTable symbols) {
+        this.tokens = tokens;
+        this.numbers = numbers;
+        this.symbols = symbols;
     }
 
     /**
-     * Parse single pair into object.
-     * @param map contains all parsed json object
+     * Parse value starting at current token, including all nested values.
      * @return parsed json object
      */
-    private Map<String, JsonObject> pair(Map<String, JsonObject> map) {
+    private JsonObject value() {
         Token token = this.peek();
-        if (token.tag == Token.Type.String) {
-            String key = JsonObject.parseString(token);
-            if (key.length() == 0) {
-                throw new InvalidToken("json object key cannot be empty string");
+        while (true) {
+            JsonObject value;
+            if (JsonObject.assignable(token)) {
+                value = new JsonObject(token, this.numbers, this.scratch);
+            } else if (token.tag == Token.Type.ObjectBegin) {
+                token = this.scan();
+                if (token.tag != Token.Type.ObjectEnd) {
+                    Frame frame = this.push(new Frame(new Members(), null));
+                    frame.key = this.key(token);
+                    token = this.scan();
+                    continue;
+                }
+                value = new JsonObject(new Members());
+            } else if (token.tag == Token.Type.ArrayBegin) {
+                token = this.scan();
+                if (token.tag != Token.Type.ArrayEnd) {
+                    this.push(new Frame(null, new ArrayList<>()));
+                    continue;
+                }
+                value = new JsonObject(new ArrayList<>());
+            } else {
+                throw new InvalidToken(String.format("%s cannot be parsed as value", token));
             }
-            token = this.scan();
-            if (token.tag == Token.Type.Colon) {
-                this.scan();
-                map.put(key, value());
-                return map;
+
+            // Complete value into open containers, until one of them expects next value
+            while (true) {
+                if (this.depth == 0)
+                    return value;
+                Frame frame = this.stack[this.depth - 1];
+                token = this.scan();
+                if (frame.map != null) {
+                    frame.map.put(frame.key, value);
+                    if (token.tag == Token.Type.Comma) {
+                        frame.key = this.key(this.scan());
+                        token = this.scan();
+                        break;
+                    }
+                    if (token.tag != Token.Type.ObjectEnd)
+                        throw new InvalidToken(String.format("invalid json object %s", token));
+                    value = new JsonObject(frame.map);
+                } else {
+                    frame.array.add(value);
+                    if (token.tag == Token.Type.Comma) {
+                        token = this.scan();
+                        break;
+                    }
+                    if (token.tag != Token.Type.ArrayEnd)
+                        throw new InvalidToken(String.format("%s cannot be parsed as list", token));
+                    value = new JsonObject(frame.array);
+                }
+                this.stack[--this.depth] = null;
             }
-            throw new InvalidToken(String.format("expected colon in json object but got %s", token.content));
         }
-        throw new InvalidToken(String.format("json object key should be stirng but not %s", token.content));
-    }
-
-    /**
-     * Parse tokens to value array.
-     * @return parsed token array
-     */
-    private List<JsonObject> array() {
-        List<JsonObject> array = new LinkedList<>();
-        return elems(array);
     }
 
     /**
-     * Parse array from tokens.
-     * @return parsed token array
+     * Parse key of a pair and its colon.
+     * @param token should be key string
+     * @return unquoted key
      */
-    private List<JsonObject> elems(List<JsonObject> array) {
-        Token token = this.scan();
-        if (token.tag == Token.Type.ArrayEnd)
-            return array;
-        array.add(value());
-        return elem(array);
+    private String key(Token token) {
+        if (token.tag != Token.Type.String)
+            throw new InvalidToken(String.format("json object key should be stirng but not %s", token));
+        String key = this.symbols != null
+                ? this.symbols.symbol(token.source, token.start, token.end, this.scratch)
+                : JsonObject.parseString(token, this.scratch);
+        if (key.length() == 0)
+            throw new InvalidToken("json object key cannot be empty string");
+        token = this.scan();
+        if (token.tag != Token.Type.Colon)
+            throw new InvalidToken(String.format("expected colon in json object but got %s", token));
+        return key;
     }
 
     /**
-     * Parse more element to array from tokens.
-     * @return parsed token array
+     * Push an open container onto stack.
+     * @param frame of container
+     * @return pushed frame
      */
-    private List<JsonObject> elem(List<JsonObject> array) {
-        Token token = this.scan();
-        if (token.tag == Token.Type.Comma) {
-            this.scan();
-            array.add(value());
-            return elem(array);
-        }
-        if (token.tag == Token.Type.ArrayEnd) {
-            return array;
-        }
-        throw new InvalidToken(String.format("%s cannot be parsed as list", token.content));
-    }
-
-    /**
-     * Parse token into Value type.
-     * @return value parsed from token
-     */
-    private JsonObject value() {
-        Token token = this.peek();
-        if (JsonObject.assignable(token))
-            return new JsonObject(token);
-        if (token.tag == Token.Type.ObjectBegin)
-            return new JsonObject(object());
-        if (token.tag == Token.Type.ArrayBegin)
-            return new JsonObject(array());
-        throw new InvalidToken(String.format("%s cannot be parsed as value", token.content));
+    private Frame push(Frame frame) {
+        if (this.depth == this.stack.length)
+            this.stack = Arrays.copyOf(this.stack, this.depth * 2);
+        this.stack[this.depth++] = frame;
+        return frame;
     }
 
     /**
-     * Scan next token and return it.
+     * Scan next token and return it, space tokens are skipped.
      * @return next token in token list
      */
     private Token scan() {
-        this.currentToken = this.tokens.get(this.index++);
+        do {
+            if (!this.tokens.hasNext())
+                throw new InvalidToken("unexpected end of json");
+            this.currentToken = this.tokens.next();
+        } while (this.currentToken.tag == Token.Type.Space);
         return this.currentToken;
     }
 
@@ -166,12 +202,10 @@ public class Parser {
      */
     public JsonObject parse() {
         Token token = this.scan();
-        if (token.tag == Token.Type.ObjectBegin)
-            return new JsonObject(object());
-        if (token.tag == Token.Type.ArrayBegin)
-            return new JsonObject(array());
-        if (JsonObject.assignable(token))
-            return value();
-        throw new InvalidToken(String.format("invalid json object", token.content));
+        if (token.tag != Token.Type.ObjectBegin
+                && token.tag != Token.Type.ArrayBegin
+                && !JsonObject.assignable(token))
+            throw new InvalidToken(String.format("invalid json object %s", token));
+        return this.value();
     }
 }
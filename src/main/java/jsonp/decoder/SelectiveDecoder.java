@@ -0,0 +1,396 @@
+package jsonp.decoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Decode only values selected by paths, everything else is skipped without being built.
+ *
+ * Paths are either JSON Pointers or simple JSONPaths:
+ *
+ *     /meta/id, /items/0/price       -> pointer, a number selects both array index and member name
+ *     $.meta.id, $['meta']["id"]     -> member names
+ *     $.items[0], $.items[*].price   -> array index or all elements
+ *     $.*                            -> all members
+ *
+ * All paths are compiled into a trie of steps, and while scanning, each value position
+ * holds the trie nodes reached by its path:
+ *
+ *     0. a node ends a path, value is parsed by Parser, paths below it are picked from that value
+ *     1. nodes have steps below, value is scanned token by token and its children are visited
+ *     2. no node is reached, value is skipped by counting brackets and quotes, without any token
+ *
+ * Skipped subtrees are not checked, so malformed json inside of them is not reported,
+ * and if an object repeats a selected key, value of each occurrence is selected.
+ * Selective decoder is immutable after creation, and could be shared by all threads.
+ */
+public class SelectiveDecoder {
+    // Chars ending a skipped scalar
+    private static final String Delimiters = ",:[]{}\" \t\n\r";
+
+    public final Decoder decoder;
+    public final List<String> paths;
+    private final Node root = new Node();
+
+    /**
+     * Step of trie, children are looked up by member name or array index.
+     */
+    private static class Node {
+        final Map<String, Node> names = new HashMap<>();
+        final Map<Integer, Node> indices = new HashMap<>();
+        Node any = null;
+        final List<String> selected = new ArrayList<>();
+
+        boolean leaf() {
+            return this.names.isEmpty() && this.indices.isEmpty() && this.any == null;
+        }
+    }
+
+    /**
+     * Compile paths into a selective decoder.
+     * @param decoder used for scanning and parsing selected values
+     * @param paths are JSON Pointers or JSONPaths, repeated paths are selected only once
+     */
+    public SelectiveDecoder(Decoder decoder, List<String> paths) {
+        this.decoder = decoder;
+        this.paths = List.copyOf(new LinkedHashSet<>(paths));
+        for (String path : this.paths) {
+            List<Node> nodes = List.of(this.root);
+            if (path.startsWith("$"))
+                nodes = this.jsonPath(path, nodes);
+            else if (path.isEmpty() || path.startsWith("/"))
+                nodes = this.pointer(path, nodes);
+            else
+                throw new RuntimeException(String.format("invalid path %s", path));
+            for (Node node : nodes)
+                node.selected.add(path);
+        }
+    }
+
+    /**
+     * Add steps of a JSON Pointer, ~1 and ~0 are unescaped into / and ~.
+     */
+    private List<Node> pointer(String path, List<Node> nodes) {
+        if (path.isEmpty())
+            return nodes;
+        for (String token : path.substring(1).split("/", -1)) {
+            String name = token.replace("~1", "/").replace("~0", "~");
+            List<Node> next = new ArrayList<>();
+            for (Node node : nodes) {
+                next.add(node.names.computeIfAbsent(name, key -> new Node()));
+                if (name.matches("0|[1-9][0-9]{0,8}"))
+                    next.add(node.indices.computeIfAbsent(Integer.parseInt(name), key -> new Node()));
+            }
+            nodes = next;
+        }
+        return nodes;
+    }
+
+    /**
+     * Add steps of a JSONPath, only names, indices and wildcards are supported.
+     */
+    private List<Node> jsonPath(String path, List<Node> nodes) {
+        int index = 1;
+        while (index < path.length()) {
+            char c = path.charAt(index);
+            List<Node> next = new ArrayList<>();
+            if (c == '.' && index + 1 < path.length() && path.charAt(index + 1) != '.') {
+                int end = index + 1;
+                while (end < path.length() && path.charAt(end) != '.' && path.charAt(end) != '[')
+                    end++;
+                String name = path.substring(index + 1, end);
+                for (Node node : nodes)
+                    next.add(name.equals("*") ? this.any(node) : node.names.computeIfAbsent(name, key -> new Node()));
+                index = end;
+            } else if (c == '[' && path.indexOf(']', index) > index + 1) {
+                int end = path.indexOf(']', index);
+                String step = path.substring(index + 1, end);
+                char quote = step.charAt(0);
+                for (Node node : nodes) {
+                    if (step.equals("*"))
+                        next.add(this.any(node));
+                    else if ((quote == '\'' || quote == '"') && step.length() > 1 && step.endsWith(String.valueOf(quote)))
+                        next.add(node.names.computeIfAbsent(step.substring(1, step.length() - 1), key -> new Node()));
+                    else if (step.matches("0|[1-9][0-9]{0,8}"))
+                        next.add(node.indices.computeIfAbsent(Integer.parseInt(step), key -> new Node()));
+                    else
+                        throw new RuntimeException(String.format("unsupported json path %s", path));
+                }
+                index = end + 1;
+            } else {
+                throw new RuntimeException(String.format("unsupported json path %s", path));
+            }
+            nodes = next;
+        }
+        return nodes;
+    }
+
+    private Node any(Node node) {
+        if (node.any == null)
+            node.any = new Node();
+        return node.any;
+    }
+
+    /**
+     * Decode values selected by paths.
+     * @param text contains json
+     * @return values of each path in order of paths, values of a path are in order of document
+     */
+    public Map<String, List<JsonObject>> decode(CharSequence text) {
+        Map<String, List<JsonObject>> results = new LinkedHashMap<>();
+        for (String path : this.paths)
+            results.put(path, new ArrayList<>());
+        Lexer lexer = this.decoder.lexer.borrow();
+        try {
+            new Cursor(text, lexer, results).visit(List.of(this.root));
+            Token token;
+            while ((token = lexer.next()) != null)
+                if (token.tag != Token.Type.Space)
+                    throw new InvalidToken(String.format("unexpected %s after json", token));
+        } finally {
+            this.decoder.lexer.release(lexer);
+        }
+        return results;
+    }
+
+    /**
+     * Decode values selected by paths from UTF-8 encoded json, bytes are scanned directly if lexer allows.
+     * @param bytes contains json text
+     * @return values of each path
+     */
+    public Map<String, List<JsonObject>> decode(byte[] bytes) {
+        if (!this.decoder.lexer.bytes)
+            return this.decode(new String(bytes, StandardCharsets.UTF_8));
+        return this.decode(new ByteSequence(bytes));
+    }
+
+    /**
+     * Pick values of paths below given nodes from a parsed value.
+     */
+    private static void collect(JsonObject value, List<Node> nodes, Map<String, List<JsonObject>> results) {
+        for (Node node : nodes) {
+            if (node.leaf())
+                continue;
+            if (value.type == JsonObject.Type.Object) {
+                Map<String, JsonObject> members = value.as();
+                for (Map.Entry<String, JsonObject> member : members.entrySet())
+                    select(member.getValue(), children(node, member.getKey()), results);
+            } else if (value.type == JsonObject.Type.Array) {
+                List<JsonObject> elements = value.as();
+                for (int index = 0; index < elements.size(); index++)
+                    select(elements.get(index), children(node, index), results);
+            }
+        }
+    }
+
+    private static void select(JsonObject value, List<Node> nodes, Map<String, List<JsonObject>> results) {
+        for (Node node : nodes)
+            for (String path : node.selected)
+                results.get(path).add(value);
+        collect(value, nodes, results);
+    }
+
+    private static List<Node> children(Node node, String name) {
+        Node child = node.names.get(name);
+        if (child == null)
+            return node.any == null ? List.of() : List.of(node.any);
+        return node.any == null ? List.of(child) : List.of(child, node.any);
+    }
+
+    private static List<Node> children(Node node, int index) {
+        Node child = node.indices.get(index);
+        if (child == null)
+            return node.any == null ? List.of() : List.of(node.any);
+        return node.any == null ? List.of(child) : List.of(child, node.any);
+    }
+
+    /**
+     * State of decoding a single text.
+     */
+    private class Cursor {
+        final CharSequence text;
+        final Lexer lexer;
+        final Map<String, List<JsonObject>> results;
+        final StringBuilder scratch = new StringBuilder();
+
+        // Tokens pulled by Parser without lookahead, so lexer stops right after a parsed value
+        final Iterator<Token> tokens = new Iterator<>() {
+            private Token next = null;
+
+            @Override
+            public boolean hasNext() {
+                if (this.next == null)
+                    this.next = Cursor.this.lexer.next();
+                return this.next != null;
+            }
+
+            @Override
+            public Token next() {
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                Token token = this.next;
+                this.next = null;
+                return token;
+            }
+        };
+
+        Cursor(CharSequence text, Lexer lexer, Map<String, List<JsonObject>> results) {
+            this.text = text;
+            this.lexer = lexer;
+            this.lexer.reset(text);
+            this.results = results;
+        }
+
+        /**
+         * Visit value at current position, whose path reaches given nodes.
+         */
+        void visit(List<Node> nodes) {
+            boolean selected = false, inner = false;
+            for (Node node : nodes) {
+                selected |= !node.selected.isEmpty();
+                inner |= !node.leaf();
+            }
+            if (selected) {
+                select(SelectiveDecoder.this.decoder.parser(this.tokens).parse(), nodes, this.results);
+                return;
+            }
+            if (!inner) {
+                this.lexer.reset(this.text, skip(this.text, this.lexer.position()), this.text.length());
+                return;
+            }
+
+            Token token = this.scan();
+            if (token.tag == Token.Type.ObjectBegin) {
+                token = this.scan();
+                if (token.tag == Token.Type.ObjectEnd)
+                    return;
+                while (true) {
+                    String name = this.name(token);
+                    List<Node> next = new ArrayList<>();
+                    for (Node node : nodes)
+                        next.addAll(children(node, name));
+                    this.visit(next);
+                    token = this.scan();
+                    if (token.tag == Token.Type.ObjectEnd)
+                        return;
+                    if (token.tag != Token.Type.Comma)
+                        throw new InvalidToken(String.format("invalid json object %s", token));
+                    token = this.scan();
+                }
+            }
+            if (token.tag == Token.Type.ArrayBegin) {
+                int index = 0;
+                this.lexer.reset(this.text, skipSpaces(this.text, this.lexer.position()), this.text.length());
+                if (this.lexer.position() < this.text.length() && this.text.charAt(this.lexer.position()) == ']') {
+                    this.scan();
+                    return;
+                }
+                while (true) {
+                    List<Node> next = new ArrayList<>();
+                    for (Node node : nodes)
+                        next.addAll(children(node, index));
+                    this.visit(next);
+                    index++;
+                    token = this.scan();
+                    if (token.tag == Token.Type.ArrayEnd)
+                        return;
+                    if (token.tag != Token.Type.Comma)
+                        throw new InvalidToken(String.format("%s cannot be parsed as list", token));
+                }
+            }
+            if (!JsonObject.assignable(token))
+                throw new InvalidToken(String.format("%s cannot be parsed as value", token));
+        }
+
+        /**
+         * Read name of a member and its colon.
+         */
+        private String name(Token token) {
+            if (token.tag != Token.Type.String)
+                throw new InvalidToken(String.format("json object key should be stirng but not %s", token));
+            SymbolTable symbols = SelectiveDecoder.this.decoder.symbols;
+            String name = symbols != null
+                    ? symbols.symbol(token.source, token.start, token.end, this.scratch)
+                    : JsonObject.parseString(token, this.scratch);
+            if (name.length() == 0)
+                throw new InvalidToken("json object key cannot be empty string");
+            token = this.scan();
+            if (token.tag != Token.Type.Colon)
+                throw new InvalidToken(String.format("expected colon in json object but got %s", token));
+            return name;
+        }
+
+        /**
+         * Scan next token except spaces.
+         */
+        private Token scan() {
+            Token token;
+            do {
+                token = this.lexer.next();
+                if (token == null)
+                    throw new InvalidToken("unexpected end of json");
+            } while (token.tag == Token.Type.Space);
+            return token;
+        }
+    }
+
+    private static int skipSpaces(CharSequence text, int index) {
+        while (index < text.length()) {
+            char c = text.charAt(index);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                break;
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Skip a value by counting brackets and quotes, chars inside strings are ignored.
+     * A scalar is skipped until next structural char or space, but at least one char must be skipped.
+     * @param text contains value
+     * @param index is start of value, or spaces before it
+     * @return index after value
+     */
+    private static int skip(CharSequence text, int index) {
+        int start = index = skipSpaces(text, index);
+        if (index == text.length())
+            throw new InvalidToken("unexpected end of json");
+        char first = text.charAt(index);
+        if (first != '"' && first != '{' && first != '[') {
+            while (index < text.length() && Delimiters.indexOf(text.charAt(index)) < 0)
+                index++;
+            if (index == start)
+                throw new InvalidToken(String.format("%c cannot be parsed as value", first));
+            return index;
+        }
+
+        int depth = 0;
+        boolean string = false;
+        for (; index < text.length(); index++) {
+            char c = text.charAt(index);
+            if (string) {
+                if (c == '\\')
+                    index++;
+                else if (c == '"') {
+                    string = false;
+                    if (depth == 0)
+                        return index + 1;
+                }
+            } else if (c == '"') {
+                string = true;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if ((c == '}' || c == ']') && --depth == 0) {
+                return index + 1;
+            }
+        }
+        throw new InvalidToken("unexpected end of json");
+    }
+}
@@ -0,0 +1,99 @@
+package jsonp.decoder;
+
+/**
+ * Parse string tokens, escapes are replaced by chars they stand for:
+ *
+ *     \" \\ \/ \b \f \n \r \t -> single char
+ *     \\uXXXX                 -> UTF-16 code unit, surrogate pairs are kept as two units
+ *
+ * Most strings have no backslash at all, so content is searched for a backslash first,
+ * and such strings are sliced from their source in a single copy.
+ * Only strings with escapes are unescaped char by char, into a scratch buffer
+ * which could be reused for all strings of a document.
+ */
+public class StringParser {
+
+    private StringParser() {
+    }
+
+    /**
+     * Parse a quoted string in given range of source, which must match string rule of json grammar.
+     * @param source contains string
+     * @param start of opening quote
+     * @param end after closing quote
+     * @param scratch is reused for unescaping, or null for a new one
+     * @return unquoted and unescaped string
+     */
+    public static String parse(CharSequence source, int start, int end, StringBuilder scratch) {
+        int from = start + 1, to = end - 1;
+        int escape = indexOf(source, '\\', from, to);
+        if (escape < 0)
+            return source.subSequence(from, to).toString();
+
+        // Escapes are ASCII, so UTF-8 bytes could be decoded before unescaping
+        if (source instanceof ByteSequence) {
+            source = source.subSequence(from, to).toString();
+            from = 0;
+            to = source.length();
+            escape = indexOf(source, '\\', from, to);
+        }
+        if (scratch == null)
+            scratch = new StringBuilder(to - from);
+        scratch.setLength(0);
+        while (escape >= 0) {
+            scratch.append(source, from, escape);
+            from = unescape(source, escape, to, scratch);
+            escape = indexOf(source, '\\', from, to);
+        }
+        scratch.append(source, from, to);
+        return scratch.toString();
+    }
+
+    /**
+     * Append char of a single escape.
+     * @param source contains escape
+     * @param index of backslash
+     * @param to is end of string content
+     * @param scratch receives unescaped char
+     * @return index after escape
+     */
+    private static int unescape(CharSequence source, int index, int to, StringBuilder scratch) {
+        char c = index + 1 < to ? source.charAt(index + 1) : '\\';
+        switch (c) {
+            case '"', '\\', '/' -> scratch.append(c);
+            case 'b' -> scratch.append('\b');
+            case 'f' -> scratch.append('\f');
+            case 'n' -> scratch.append('\n');
+            case 'r' -> scratch.append('\r');
+            case 't' -> scratch.append('\t');
+            case 'u' -> {
+                if (index + 6 > to)
+                    throw new InvalidToken(String.format("invalid escape %s", source.subSequence(index, to)));
+                int unit = 0;
+                for (int offset = 2; offset < 6; offset++) {
+                    int digit = Character.digit(source.charAt(index + offset), 16);
+                    if (digit < 0)
+                        throw new InvalidToken(String.format("invalid escape %s",
+                                source.subSequence(index, index + 6)));
+                    unit = unit << 4 | digit;
+                }
+                scratch.append((char) unit);
+                return index + 6;
+            }
+            default -> throw new InvalidToken(String.format("invalid escape %s",
+                    source.subSequence(index, Math.min(index + 2, to))));
+        }
+        return index + 2;
+    }
+
+    private static int indexOf(CharSequence source, char c, int from, int to) {
+        if (source instanceof String string)
+            return string.indexOf(c, from, to);
+        if (source instanceof ByteSequence bytes)
+            return bytes.indexOf((byte) c, from, to);
+        for (int index = from; index < to; index++)
+            if (source.charAt(index) == c)
+                return index;
+        return -1;
+    }
+}
@@ -0,0 +1,139 @@
+package jsonp.decoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Decode UTF-8 encoded json in two stages, similar to simdjson:
+ *
+ *     0. structural positions of whole text are indexed, see StructuralIndex
+ *     1. parser jumps from position to position, tokens are made directly from them
+ *
+ * Structural chars and strings become tokens without running lexer at all,
+ * lexer only scans scalars (numbers, true, false and null) between positions,
+ * and strings too if any string of text contains escapes, for checking them:
+ *
+ *     "name": 12.5 ,
+ *     ^    ^ ^   ^ ^ -> string [0, 6), colon, number [8, 12) without trailing spaces, comma
+ *
+ * Texts which cannot be indexed are decoded by lexer instead, which also reports errors of malformed json.
+ */
+public class StructuralDecoder {
+    public final Decoder decoder;
+    private final boolean vectorized;
+
+    public StructuralDecoder(Decoder decoder) {
+        this(decoder, StructuralIndex.Vectorized);
+    }
+
+    /**
+     * Create structural decoder.
+     * @param decoder used for scanning scalars and decoding texts which cannot be indexed
+     * @param vectorized if index is built with Vector API
+     */
+    public StructuralDecoder(Decoder decoder, boolean vectorized) {
+        this.decoder = decoder;
+        this.vectorized = vectorized;
+    }
+
+    /**
+     * Decode UTF-8 encoded json.
+     * @param bytes contains json text
+     * @return parsed json object
+     */
+    public JsonObject decode(byte[] bytes) {
+        StructuralIndex index = StructuralIndex.build(bytes, 0, bytes.length, this.vectorized);
+        if (index == null) {
+            CharSequence text = this.decoder.lexer.bytes
+                    ? new ByteSequence(bytes)
+                    : new String(bytes, StandardCharsets.UTF_8);
+            return this.decoder.decodeStrictly(text);
+        }
+        Lexer lexer = this.decoder.lexer.borrow();
+        try {
+            Iterator<Token> tokens = new IndexedTokens(index, lexer);
+            JsonObject result = this.decoder.parser(tokens).parse();
+            if (tokens.hasNext())
+                throw new InvalidToken(String.format("unexpected %s after json", tokens.next()));
+            return result;
+        } finally {
+            this.decoder.lexer.release(lexer);
+        }
+    }
+
+    /**
+     * Tokens made from structural positions, spaces are never emitted.
+     */
+    private static class IndexedTokens implements Iterator<Token> {
+        private final StructuralIndex index;
+        private final CharSequence source;
+        private final Lexer lexer;
+        private int position = 0;
+
+        IndexedTokens(StructuralIndex index, Lexer lexer) {
+            this.index = index;
+            this.source = new ByteSequence(index.bytes);
+            this.lexer = lexer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.position < this.index.count;
+        }
+
+        @Override
+        public Token next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+            int start = this.index.positions[this.position++];
+            switch (this.index.bytes[start]) {
+                case '{': return new Token(this.source, start, start + 1, "{");
+                case '}': return new Token(this.source, start, start + 1, "}");
+                case '[': return new Token(this.source, start, start + 1, "[");
+                case ']': return new Token(this.source, start, start + 1, "]");
+                case ':': return new Token(this.source, start, start + 1, ":");
+                case ',': return new Token(this.source, start, start + 1, ",");
+                case '"':
+                    // Index only exists if every string is closed, so next position is closing quote
+                    int close = this.index.positions[this.position++];
+                    if (this.index.escapes)
+                        return this.scan(start, close + 1);
+                    return new Token(this.source, start, close + 1, "string");
+                default:
+                    return this.scalar(start);
+            }
+        }
+
+        /**
+         * Scan scalar from its start until next position, trailing spaces are excluded.
+         * @param start of scalar
+         * @return scalar token
+         */
+        private Token scalar(int start) {
+            int end = this.hasNext() ? this.index.positions[this.position] : this.index.to;
+            while (end > start && isSpace(this.index.bytes[end - 1]))
+                end--;
+            return this.scan(start, end);
+        }
+
+        /**
+         * Scan a range which must be exactly a single token.
+         * @param start of range
+         * @param end of range
+         * @return scanned token
+         */
+        private Token scan(int start, int end) {
+            this.lexer.reset(this.source, start, end);
+            Token token = this.lexer.next();
+            if (token.end != end)
+                throw new InvalidToken(String.format("invalid token %s",
+                        new String(this.index.bytes, start, end - start, StandardCharsets.UTF_8)));
+            return token;
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package jsonp.decoder;
+
+import java.util.Arrays;
+
+/**
+ * Index of structural positions in UTF-8 encoded json, built before any token is scanned.
+ *
+ * Bytes are classified in blocks of 64, each class of a block is a bitmask with one bit per byte:
+ *
+ *     quote, backslash, structural ({}[]:,), space, control (below 0x20)
+ *
+ * Masks are computed with Vector API if it is available, see VectorMasks, otherwise byte by byte.
+ * Then with bit operations only:
+ *
+ *     0. bytes preceded by an odd run of backslashes are escaped, escaped quotes are dropped
+ *     1. prefix xor of quotes marks bytes inside strings, from opening quote to closing quote
+ *     2. structural bytes outside strings, all quotes, and first byte of every run of scalar
+ *        bytes (not space, structural, quote or string) are recorded as positions
+ *
+ * Strings always occupy two positions, their opening and closing quotes,
+ * so content of strings and spaces never need to be visited again.
+ */
+public class StructuralIndex {
+    public static final int BlockSize = 64;
+
+    // Vector API is an incubator module, it must be added with --add-modules jdk.incubator.vector
+    public static final boolean Vectorized = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    public final byte[] bytes;
+    public final int from;
+    public final int to;
+    public final int[] positions;
+    public final int count;
+    // If any string contains a backslash
+    public final boolean escapes;
+
+    private StructuralIndex(byte[] bytes, int from, int to, int[] positions, int count, boolean escapes) {
+        this.bytes = bytes;
+        this.from = from;
+        this.to = to;
+        this.positions = positions;
+        this.count = count;
+        this.escapes = escapes;
+    }
+
+    public static StructuralIndex build(byte[] bytes) {
+        return build(bytes, 0, bytes.length, Vectorized);
+    }
+
+    /**
+     * Build index of given range of bytes.
+     * @param bytes contains json text
+     * @param from is start of range
+     * @param to is end of range
+     * @param vectorized if masks are computed with Vector API
+     * @return index, or null if a string is not closed or contains a control char
+     */
+    public static StructuralIndex build(byte[] bytes, int from, int to, boolean vectorized) {
+        if (vectorized && !Vectorized)
+            throw new RuntimeException("vector api is not available, add module jdk.incubator.vector");
+
+        int[] positions = new int[Math.max(16, (to - from) >>> 3)];
+        int count = 0;
+        long[] masks = new long[5];
+        byte[] tail = new byte[BlockSize];
+        boolean escapedCarry = false, stringCarry = false, scalarCarry = false, escapes = false;
+        for (int block = from; block < to; block += BlockSize) {
+            long valid = -1L;
+            if (to - block >= BlockSize) {
+                if (vectorized)
+                    VectorMasks.masks(bytes, block, masks);
+                else
+                    masks(bytes, block, masks);
+            } else {
+                // Last block is padded with spaces, they never become positions
+                Arrays.fill(tail, (byte) ' ');
+                System.arraycopy(bytes, block, tail, 0, to - block);
+                masks(tail, 0, masks);
+                valid = (1L << (to - block)) - 1;
+            }
+            long quote = masks[0], backslash = masks[1], structural = masks[2], space = masks[3];
+            long control = masks[4];
+
+            long escaped = 0;
+            if (backslash != 0 || escapedCarry) {
+                if (escapedCarry) {
+                    escaped = 1L;
+                    backslash &= ~1L;
+                }
+                escapedCarry = false;
+                while (backslash != 0) {
+                    int index = Long.numberOfTrailingZeros(backslash);
+                    backslash &= backslash - 1;
+                    if (index == BlockSize - 1) {
+                        escapedCarry = true;
+                    } else {
+                        escaped |= 1L << (index + 1);
+                        backslash &= ~(1L << (index + 1));
+                    }
+                }
+            }
+
+            quote &= ~escaped;
+            long string = prefixXor(quote) ^ (stringCarry ? -1L : 0L);
+            stringCarry = string < 0;
+            if ((control & string & valid) != 0)
+                return null;
+            if ((masks[1] & string) != 0)
+                escapes = true;
+
+            long scalar = ~(space | structural | quote | string) & valid;
+            long starts = scalar & ~((scalar << 1) | (scalarCarry ? 1L : 0L));
+            scalarCarry = scalar < 0;
+
+            long found = (structural & ~string) | quote | starts;
+            if (count + Long.bitCount(found) > positions.length)
+                positions = Arrays.copyOf(positions, Math.max(positions.length * 2, count + BlockSize));
+            while (found != 0) {
+                positions[count++] = block + Long.numberOfTrailingZeros(found);
+                found &= found - 1;
+            }
+        }
+        if (stringCarry)
+            return null;
+        return new StructuralIndex(bytes, from, to, positions, count, escapes);
+    }
+
+    /**
+     * Classify a block of bytes one by one.
+     * @param bytes contains block
+     * @param offset is start of block
+     * @param masks receives quote, backslash, structural, space and control masks
+     */
+    private static void masks(byte[] bytes, int offset, long[] masks) {
+        long quote = 0, backslash = 0, structural = 0, space = 0, control = 0;
+        for (int index = 0; index < BlockSize; index++) {
+            long bit = 1L << index;
+            switch (bytes[offset + index]) {
+                case '"' -> quote |= bit;
+                case '\\' -> backslash |= bit;
+                case '{', '}', '[', ']', ':', ',' -> structural |= bit;
+                case ' ' -> space |= bit;
+                case '\t', '\n', '\r' -> {
+                    space |= bit;
+                    control |= bit;
+                }
+                default -> {
+                    if (bytes[offset + index] >= 0 && bytes[offset + index] < 0x20)
+                        control |= bit;
+                }
+            }
+        }
+        masks[0] = quote;
+        masks[1] = backslash;
+        masks[2] = structural;
+        masks[3] = space;
+        masks[4] = control;
+    }
+
+    /**
+     * Prefix xor of bits, each bit becomes xor of itself and all lower bits.
+     * @param bits going to be summed
+     * @return prefix xor
+     */
+    private static long prefixXor(long bits) {
+        bits ^= bits << 1;
+        bits ^= bits << 2;
+        bits ^= bits << 4;
+        bits ^= bits << 8;
+        bits ^= bits << 16;
+        bits ^= bits << 32;
+        return bits;
+    }
+}
@@ -0,0 +1,79 @@
+package jsonp.decoder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of object keys, so repeated keys of all documents share a canonical string.
+ *
+ * Hash of a key is computed over chars of its source range, same as String.hashCode,
+ * and picks a single slot:
+ *
+ *     slot = spread(hash) & (capacity - 1)
+ *
+ * If the string in that slot has same hash and same chars, it is returned without allocating,
+ * otherwise a new string is created and replaces it. So table never grows over its capacity,
+ * and frequent keys stay in it while rare ones keep evicting each other.
+ *
+ * Only short printable ASCII keys without escapes are cached, their chars are same
+ * in strings and in UTF-8 bytes, other keys are parsed by StringParser as usual.
+ * Slots are read and written atomically, so a table could be shared by all threads of a decoder.
+ */
+public class SymbolTable {
+    public static final int DefaultCapacity = 4096;
+    public static final int MaxLength = 64;
+
+    private final AtomicReferenceArray<String> symbols;
+    private final int mask;
+
+    public SymbolTable() {
+        this(DefaultCapacity);
+    }
+
+    /**
+     * Create symbol table.
+     * @param capacity is count of slots, rounded up to a power of two
+     */
+    public SymbolTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.symbols = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Get canonical string of a quoted key in given range of source.
+     * @param source contains key
+     * @param start of opening quote
+     * @param end after closing quote
+     * @param scratch is reused for unescaping keys which are not cached, or null
+     * @return unquoted key
+     */
+    public String symbol(CharSequence source, int start, int end, StringBuilder scratch) {
+        int from = start + 1, to = end - 1;
+        if (to - from > MaxLength)
+            return StringParser.parse(source, start, end, scratch);
+        int hash = 0;
+        for (int index = from; index < to; index++) {
+            char c = source.charAt(index);
+            if (c < 0x20 || c >= 0x7F || c == '\\')
+                return StringParser.parse(source, start, end, scratch);
+            hash = 31 * hash + c;
+        }
+
+        int slot = (hash ^ (hash >>> 16)) & this.mask;
+        String symbol = this.symbols.getAcquire(slot);
+        if (symbol != null && symbol.hashCode() == hash && matches(symbol, source, from, to))
+            return symbol;
+        symbol = source.subSequence(from, to).toString();
+        this.symbols.setRelease(slot, symbol);
+        return symbol;
+    }
+
+    private static boolean matches(String symbol, CharSequence source, int from, int to) {
+        if (symbol.length() != to - from)
+            return false;
+        for (int index = from; index < to; index++)
+            if (symbol.charAt(index - from) != source.charAt(index))
+                return false;
+        return true;
+    }
+}
@@ -1,11 +1,17 @@
 package jsonp.decoder;
 
 import java.util.AbstractMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
-public class Token {
+/**
+ * Token refers to a range of source text instead of copying it:
+ *
+ *     source[start, end) -> content of token
+ *
+ * Token itself is a char sequence view of that range,
+ * content is only materialized as a string when it is really needed.
+ */
+public class Token implements CharSequence {
 
     public enum Type {
         ObjectBegin,
@@ -36,19 +42,64 @@ public class Token {
             new AbstractMap.SimpleEntry<>("false", Type.False),
             new AbstractMap.SimpleEntry<>("true", Type.True));
 
-    public final String content;
+    // Returned by Lexer when no token is emitted for a char
+    public static final Token Nothing = new Token();
+
+    public final CharSequence source;
+    public final int start;
+    public final int end;
     public final Type tag;
     public final Boolean nothing;
+    private String content = null;
 
-    protected Token(List<Character> buffer, String tag) {
+    protected Token(CharSequence source, int start, int end, String tag) {
         this.nothing = false;
         this.tag = TypeMapping.get(tag);
-        this.content = buffer.stream().map(String::valueOf).collect(Collectors.joining());
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    protected Token(String content, String tag) {
+        this(content, 0, content.length(), tag);
+        this.content = content;
     }
 
-    protected Token() {
+    private Token() {
         this.nothing = true;
-        this.content = null;
         this.tag = null;
+        this.source = "";
+        this.start = 0;
+        this.end = 0;
+    }
+
+    /**
+     * Materialize content of token, it is cached for later calls.
+     * @return content string
+     */
+    public String content() {
+        if (this.content == null)
+            this.content = this.source.subSequence(this.start, this.end).toString();
+        return this.content;
+    }
+
+    @Override
+    public int length() {
+        return this.end - this.start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return this.source.charAt(this.start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.source.subSequence(this.start + start, this.start + end);
+    }
+
+    @Override
+    public String toString() {
+        return this.content();
     }
 }
@@ -0,0 +1,133 @@
+package jsonp.decoder;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import jsonp.automata.Runner;
+
+/**
+ * Tokenize chars pulled from a reader lazily, through a fixed size refillable buffer:
+ *
+ *     buffer: [ scanned tokens | current token | unscanned chars | free ]
+ *                               ^start          ^position         ^limit
+ *
+ * When all chars are scanned, current token is moved to the front and the rest is refilled,
+ * buffer only grows if a single token is larger than it.
+ * So memory depends on the largest token, not on the size of document.
+ *
+ * Token stream is a cursor, it should NOT be shared between threads.
+ */
+public class TokenStream implements Iterator<Token> {
+    public static final int DefaultCapacity = 64 * 1024;
+
+    private final Reader reader;
+    private final Runner runner;
+    private char[] buffer;
+    private CharBuffer window;
+    private int start = 0;
+    private int position = 0;
+    private int limit = 0;
+    private boolean exhausted = false;
+    private Token next = null;
+
+    public TokenStream(CompiledLexer lexer, Reader reader) {
+        this(lexer, reader, DefaultCapacity);
+    }
+
+    /**
+     * Create token stream with given initial buffer size.
+     * @param lexer used for scanning
+     * @param reader going to be tokenized
+     * @param capacity of buffer in chars
+     */
+    public TokenStream(CompiledLexer lexer, Reader reader, int capacity) {
+        this.reader = reader;
+        this.runner = lexer.automaton.runner();
+        this.buffer = new char[Math.max(1, capacity)];
+        this.window = CharBuffer.wrap(this.buffer);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null)
+            this.next = this.scan();
+        return this.next != null;
+    }
+
+    @Override
+    public Token next() {
+        if (!this.hasNext())
+            throw new NoSuchElementException();
+        Token token = this.next;
+        this.next = null;
+        return token;
+    }
+
+    /**
+     * Scan next token using maximal munch, same as Lexer does.
+     * @return next token, or null if reader is exhausted
+     */
+    private Token scan() {
+        this.runner.reset();
+        this.start = this.position;
+        while (true) {
+            if (this.position == this.limit && !this.fill()) {
+                if (this.position == this.start)
+                    return null;
+                return this.emit();
+            }
+
+            this.position = this.runner.advance(this.window, this.position, this.limit);
+            if (this.position < this.limit) {
+                if (this.position == this.start)
+                    throw new InvalidToken(String.format("invalid token %c", this.buffer[this.position]));
+                return this.emit();
+            }
+        }
+    }
+
+    private Token emit() {
+        String content = new String(this.buffer, this.start, this.position - this.start);
+        String label = this.runner.label();
+        if (label == null)
+            throw new InvalidToken(String.format("invalid token %s", content));
+        return new Token(content, label);
+    }
+
+    /**
+     * Move current token to the front of buffer and read more chars after it.
+     * @return false if reader is exhausted
+     */
+    private boolean fill() {
+        if (this.exhausted)
+            return false;
+        if (this.start > 0) {
+            System.arraycopy(this.buffer, this.start, this.buffer, 0, this.limit - this.start);
+            this.position -= this.start;
+            this.limit -= this.start;
+            this.start = 0;
+        }
+        if (this.limit == this.buffer.length) {
+            char[] grown = new char[this.buffer.length * 2];
+            System.arraycopy(this.buffer, 0, grown, 0, this.limit);
+            this.buffer = grown;
+            this.window = CharBuffer.wrap(this.buffer);
+        }
+
+        try {
+            int count = this.reader.read(this.buffer, this.limit, this.buffer.length - this.limit);
+            if (count < 0) {
+                this.exhausted = true;
+                return false;
+            }
+            this.limit += count;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
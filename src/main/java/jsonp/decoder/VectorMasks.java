@@ -0,0 +1,59 @@
+package jsonp.decoder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Classify a block of bytes with Vector API, see StructuralIndex.
+ *
+ * Each comparison covers a whole vector of lanes, and its mask is packed into bits of a long.
+ * Brackets differ from braces only by bit 0x20, so both are found by setting that bit:
+ *
+ *     '[' | 0x20 == '{', ']' | 0x20 == '}'
+ *
+ * This class is only loaded if module jdk.incubator.vector is present.
+ */
+final class VectorMasks {
+    // Preferred species clamped to 64 lanes of bytes, so a block is covered by one or more whole vectors
+    // and each mask fits into a long, even on hardware with wider vectors
+    private static final VectorSpecies<Byte> Species = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.min(StructuralIndex.BlockSize * Byte.SIZE,
+                    ByteVector.SPECIES_PREFERRED.vectorBitSize())));
+
+    private VectorMasks() {
+    }
+
+    /**
+     * Classify a full block of bytes.
+     * @param bytes contains block
+     * @param offset is start of block
+     * @param masks receives quote, backslash, structural, space and control masks
+     */
+    static void masks(byte[] bytes, int offset, long[] masks) {
+        long quote = 0, backslash = 0, structural = 0, space = 0, control = 0;
+        for (int index = 0; index < StructuralIndex.BlockSize; index += Species.length()) {
+            ByteVector vector = ByteVector.fromArray(Species, bytes, offset + index);
+            ByteVector folded = vector.or((byte) 0x20);
+            quote |= vector.eq((byte) '"').toLong() << index;
+            backslash |= vector.eq((byte) '\\').toLong() << index;
+            structural |= folded.eq((byte) '{')
+                    .or(folded.eq((byte) '}'))
+                    .or(vector.eq((byte) ':'))
+                    .or(vector.eq((byte) ','))
+                    .toLong() << index;
+            space |= vector.eq((byte) ' ')
+                    .or(vector.eq((byte) '\t'))
+                    .or(vector.eq((byte) '\n'))
+                    .or(vector.eq((byte) '\r'))
+                    .toLong() << index;
+            control |= vector.compare(VectorOperators.UNSIGNED_LT, (byte) 0x20).toLong() << index;
+        }
+        masks[0] = quote;
+        masks[1] = backslash;
+        masks[2] = structural;
+        masks[3] = space;
+        masks[4] = control;
+    }
+}
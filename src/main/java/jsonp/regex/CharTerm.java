@@ -1,42 +1,133 @@
 package jsonp.regex;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Arrays;
 
+/**
+ * Char class stored as sorted and merged code unit ranges:
+ *
+ *     ranges = [from0, to0, from1, to1, ...] (both inclusive)
+ *
+ * ASCII chars are also kept in a 128 bits bitmap, so most chars could be tested without searching.
+ */
 public class CharTerm extends Term implements TransitionableTerm {
     public final String name;
-    public final Set<Character> form;
+    public final char[] ranges;
+    private final long lowBits;
+    private final long highBits;
 
     public CharTerm(String form) {
         this(form, form);
     }
 
     public CharTerm(String form, String name) {
-        this.form = form.chars()
-                .mapToObj(e -> (char) e)
-                .collect(Collectors.toCollection(HashSet::new));
+        this(ranges(form), name);
+    }
+
+    public CharTerm(char[] ranges, String name) {
+        this.ranges = merge(ranges);
         this.name = name;
+        long lowBits = 0, highBits = 0;
+        for (int index = 0; index < this.ranges.length; index += 2)
+            for (int c = this.ranges[index]; c <= this.ranges[index + 1] && c < 128; c++) {
+                if (c < 64)
+                    lowBits |= 1L << c;
+                else
+                    highBits |= 1L << c;
+            }
+        this.lowBits = lowBits;
+        this.highBits = highBits;
+    }
+
+    /**
+     * Convert all chars in form into ranges, each char as a single range.
+     * @param form contains all chars
+     * @return unmerged ranges
+     */
+    private static char[] ranges(String form) {
+        char[] ranges = new char[form.length() * 2];
+        for (int index = 0; index < form.length(); index++) {
+            ranges[index * 2] = form.charAt(index);
+            ranges[index * 2 + 1] = form.charAt(index);
+        }
+        return ranges;
+    }
+
+    /**
+     * Sort ranges by start and merge overlapped or adjacent ones.
+     * @param ranges unsorted ranges
+     * @return sorted and merged ranges
+     */
+    private static char[] merge(char[] ranges) {
+        int count = ranges.length / 2;
+        long[] packed = new long[count];
+        for (int index = 0; index < count; index++) {
+            assert ranges[index * 2] <= ranges[index * 2 + 1];
+            packed[index] = ((long) ranges[index * 2] << 16) | ranges[index * 2 + 1];
+        }
+        Arrays.sort(packed);
+
+        char[] merged = new char[count * 2];
+        int size = 0;
+        for (long range : packed) {
+            char from = (char) (range >>> 16), to = (char) range;
+            if (size > 0 && from <= merged[size - 1] + 1) {
+                merged[size - 1] = (char) Math.max(merged[size - 1], to);
+                continue;
+            }
+            merged[size++] = from;
+            merged[size++] = to;
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * Union of multiple char terms.
+     * @param terms going to be combined
+     * @param name of combined char term
+     * @return char term accepts any char accepted by given terms
+     */
+    public static CharTerm union(Iterable<CharTerm> terms, String name) {
+        char[] ranges = new char[0];
+        for (CharTerm term : terms) {
+            int size = ranges.length;
+            ranges = Arrays.copyOf(ranges, size + term.ranges.length);
+            System.arraycopy(term.ranges, 0, ranges, size, term.ranges.length);
+        }
+        return new CharTerm(ranges, name);
     }
 
     /**
      * Check if current char term accept given char.
      */
     @Override
-    public Boolean accept(Character c) {
-        return this.form.contains(c);
+    public boolean accept(char c) {
+        if (c < 64)
+            return (this.lowBits & (1L << c)) != 0;
+        if (c < 128)
+            return (this.highBits & (1L << c)) != 0;
+
+        // Binary search for last range starts before given char
+        int low = 0, high = this.ranges.length / 2 - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (this.ranges[middle * 2] <= c)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return high >= 0 && c <= this.ranges[high * 2 + 1];
     }
 
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof CharTerm)
-            return this.form.equals(((CharTerm) obj).form);
+            return Arrays.equals(this.ranges, ((CharTerm) obj).ranges);
         return false;
     }
 
     @Override
     public int hashCode() {
-        return this.name.hashCode();
+        return Arrays.hashCode(this.ranges);
     }
 
     @Override
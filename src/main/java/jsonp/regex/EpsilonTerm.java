@@ -6,7 +6,7 @@ public class EpsilonTerm extends Term implements TransitionableTerm {
      * Epsilon term should not accept any char so make it as a empty set.
      */
     @Override
-    public Boolean accept(Character c) {
+    public boolean accept(char c) {
         return false;
     }
 
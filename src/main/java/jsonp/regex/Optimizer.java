@@ -0,0 +1,282 @@
+package jsonp.regex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Simplify term before building automata, so fewer states and transitions are needed:
+ *
+ *     0. nested concat and alter are flattened, epsilons in concat are dropped
+ *     1. single char alternatives are merged into one char term: a|b|[0-9] -> [ab0-9]
+ *     2. common prefixes of alternatives are factored like a trie: ab|ac -> a(b|c) -> a[bc]
+ *     3. x x* and x* x are collapsed into x+, (x*)* and (x+)* into x*
+ *
+ * Grouped terms are never merged into others, since their exit states carry labels.
+ * Given term is not modified, terms shared between rules (like Term.Digits) are kept intact.
+ */
+public class Optimizer {
+
+    /**
+     * Optimize term and all its subterms.
+     * @param term going to be optimized
+     * @return equivalent term, with same group and label
+     */
+    public static Term optimize(Term term) {
+        Term optimized = switch (term) {
+            case ConcatTerm matcher -> concat(matcher);
+            case AlterTerm matcher -> alter(matcher);
+            case KleeneTerm matcher -> kleene(matcher);
+            case PlusTerm matcher -> plus(matcher);
+            case RepeatTerm matcher -> new RepeatTerm(optimize(matcher.t), matcher.n, matcher.m);
+            default -> term;
+        };
+        if (!term.grouped)
+            return optimized;
+
+        // Label a copy of result, since it may be shared, nested label is kept by an extra epsilon
+        optimized = optimized != term && optimized.grouped ? new ConcatTerm(optimized, Term.Epsilon) : copy(optimized);
+        optimized.grouped = true;
+        optimized.label = term.label;
+        return optimized;
+    }
+
+    private static Term concat(ConcatTerm term) {
+        List<Term> operands = new ArrayList<>();
+        for (Term operand : expand(term, ConcatTerm.class)) {
+            if (operand instanceof EpsilonTerm && !operand.grouped)
+                continue;
+
+            // x x* -> x+, x* x -> x+
+            if (!operands.isEmpty()) {
+                Term last = operands.getLast();
+                if (operand instanceof KleeneTerm kleene && !kleene.grouped && same(kleene.t, last)) {
+                    operands.set(operands.size() - 1, new PlusTerm(last));
+                    continue;
+                }
+                if (last instanceof KleeneTerm kleene && !kleene.grouped && same(kleene.t, operand)) {
+                    operands.set(operands.size() - 1, new PlusTerm(operand));
+                    continue;
+                }
+            }
+            operands.add(operand);
+        }
+        return join(operands);
+    }
+
+    private static Term alter(AlterTerm term) {
+        return factor(expand(term, AlterTerm.class));
+    }
+
+    /**
+     * Merge char alternatives and factor common prefixes of optimized alternatives.
+     *
+     * Each slot of result is a kept alternative, merged char term, or sequences sharing a head,
+     * slots are ordered by their first appearance.
+     *
+     * @param alternatives already optimized
+     * @return equivalent alternation
+     */
+    private static Term factor(List<Term> alternatives) {
+        List<Term> heads = new ArrayList<>();
+        List<List<List<Term>>> sequences = new ArrayList<>();
+        List<CharTerm> chars = new ArrayList<>();
+        int charSlot = -1;
+        boolean epsilon = false;
+        for (Term alternative : alternatives) {
+            if (alternative.grouped) {
+                heads.add(alternative);
+                sequences.add(null);
+                continue;
+            }
+            List<Term> sequence = alternative instanceof ConcatTerm
+                    ? flatten(alternative, ConcatTerm.class)
+                    : List.of(alternative);
+            Term head = sequence.getFirst();
+            if (head instanceof EpsilonTerm && sequence.size() == 1) {
+                epsilon = true;
+                continue;
+            }
+            if (sequence.size() == 1 && head instanceof CharTerm matcher) {
+                if (charSlot < 0) {
+                    charSlot = heads.size();
+                    heads.add(null);
+                    sequences.add(null);
+                }
+                chars.add(matcher);
+                continue;
+            }
+
+            int slot = 0;
+            while (slot < heads.size() && (sequences.get(slot) == null || !same(heads.get(slot), head)))
+                slot++;
+            if (slot == heads.size()) {
+                heads.add(head);
+                sequences.add(new ArrayList<>());
+            }
+            sequences.get(slot).add(sequence);
+        }
+
+        List<Term> results = new ArrayList<>();
+        for (int slot = 0; slot < heads.size(); slot++) {
+            List<List<Term>> shared = sequences.get(slot);
+            if (slot == charSlot) {
+                results.add(chars.size() == 1 ? chars.getFirst() : CharTerm.union(chars, name(chars)));
+            } else if (shared == null) {
+                results.add(heads.get(slot));
+            } else if (shared.size() == 1) {
+                results.add(join(shared.getFirst()));
+            } else {
+                List<Term> rests = new ArrayList<>();
+                for (List<Term> sequence : shared)
+                    rests.add(join(sequence.subList(1, sequence.size())));
+                Term rest = factor(rests);
+                List<Term> operands = new ArrayList<>(List.of(heads.get(slot)));
+                if (!(rest instanceof EpsilonTerm) || rest.grouped)
+                    operands.add(rest);
+                results.add(join(operands));
+            }
+        }
+        if (epsilon)
+            results.add(Term.Epsilon);
+
+        if (results.isEmpty())
+            return Term.Epsilon;
+        Term alternation = results.getLast();
+        for (int index = results.size() - 2; index >= 0; index--)
+            alternation = new AlterTerm(results.get(index), alternation);
+        return alternation;
+    }
+
+    private static Term kleene(KleeneTerm term) {
+        Term t = optimize(term.t);
+        if (t instanceof EpsilonTerm && !t.grouped)
+            return Term.Epsilon;
+        if (!t.grouped && t instanceof KleeneTerm)
+            return t;
+        if (!t.grouped && t instanceof PlusTerm plus)
+            return new KleeneTerm(plus.t);
+        return new KleeneTerm(t);
+    }
+
+    private static Term plus(PlusTerm term) {
+        Term t = optimize(term.t);
+        if (t instanceof EpsilonTerm && !t.grouped)
+            return Term.Epsilon;
+        if (!t.grouped && (t instanceof KleeneTerm || t instanceof PlusTerm))
+            return t;
+        return new PlusTerm(t);
+    }
+
+    /**
+     * Collect operands of nested terms with same type, grouped ones are not flattened.
+     * @param term going to be flattened
+     * @param type of concat or alter
+     * @return operands from left to right
+     */
+    private static List<Term> flatten(Term term, Class<? extends Term> type) {
+        List<Term> operands = new ArrayList<>();
+        List<Term> stack = new ArrayList<>(List.of(term));
+        boolean root = true;
+        while (!stack.isEmpty()) {
+            Term current = stack.removeLast();
+            if (type.isInstance(current) && (root || !current.grouped)) {
+                Term[] children = current instanceof ConcatTerm concat
+                        ? new Term[] { concat.tl, concat.tr }
+                        : new Term[] { ((AlterTerm) current).tl, ((AlterTerm) current).tr };
+                stack.add(children[1]);
+                stack.add(children[0]);
+            } else {
+                operands.add(current);
+            }
+            root = false;
+        }
+        return operands;
+    }
+
+    /**
+     * Flatten term and optimize its operands, optimized operands are flattened again.
+     * @param term going to be flattened
+     * @param type of concat or alter
+     * @return optimized operands from left to right
+     */
+    private static List<Term> expand(Term term, Class<? extends Term> type) {
+        List<Term> operands = new ArrayList<>();
+        for (Term operand : flatten(term, type)) {
+            operand = optimize(operand);
+            if (type.isInstance(operand) && !operand.grouped)
+                operands.addAll(flatten(operand, type));
+            else
+                operands.add(operand);
+        }
+        return operands;
+    }
+
+    /**
+     * Concat operands as a right nested term.
+     * @param operands of concat
+     * @return concat term, or epsilon if nothing left
+     */
+    private static Term join(List<Term> operands) {
+        if (operands.isEmpty())
+            return Term.Epsilon;
+        Term concat = operands.getLast();
+        for (int index = operands.size() - 2; index >= 0; index--)
+            concat = new ConcatTerm(operands.get(index), concat);
+        return concat;
+    }
+
+    /**
+     * Check if two ungrouped terms always match same strings.
+     * @return true if terms are structurally equal
+     */
+    static boolean same(Term a, Term b) {
+        if (a == b)
+            return !a.grouped;
+        if (a.grouped || b.grouped || a.getClass() != b.getClass())
+            return false;
+        return switch (a) {
+            case CharTerm matcher -> matcher.equals(b);
+            case EpsilonTerm matcher -> true;
+            case ConcatTerm matcher -> same(matcher.tl, ((ConcatTerm) b).tl) && same(matcher.tr, ((ConcatTerm) b).tr);
+            case AlterTerm matcher -> same(matcher.tl, ((AlterTerm) b).tl) && same(matcher.tr, ((AlterTerm) b).tr);
+            case KleeneTerm matcher -> same(matcher.t, ((KleeneTerm) b).t);
+            case PlusTerm matcher -> same(matcher.t, ((PlusTerm) b).t);
+            case RepeatTerm matcher -> matcher.n.equals(((RepeatTerm) b).n)
+                    && matcher.m.equals(((RepeatTerm) b).m)
+                    && same(matcher.t, ((RepeatTerm) b).t);
+            default -> false;
+        };
+    }
+
+    /**
+     * Shallow copy of term without group and label.
+     * @param term going to be copied
+     * @return new term
+     */
+    private static Term copy(Term term) {
+        return switch (term) {
+            case CharTerm matcher -> new CharTerm(matcher.ranges, matcher.name);
+            case EpsilonTerm matcher -> new EpsilonTerm();
+            case ConcatTerm matcher -> new ConcatTerm(matcher.tl, matcher.tr);
+            case AlterTerm matcher -> new AlterTerm(matcher.tl, matcher.tr);
+            case KleeneTerm matcher -> new KleeneTerm(matcher.t);
+            case PlusTerm matcher -> new PlusTerm(matcher.t);
+            case RepeatTerm matcher -> new RepeatTerm(matcher.t, matcher.n, matcher.m);
+            default -> throw new RuntimeException(String.format("unknown term type %s", term.getClass().getName()));
+        };
+    }
+
+    /**
+     * Name of merged char term, like [abc].
+     */
+    private static String name(List<CharTerm> chars) {
+        StringBuilder builder = new StringBuilder("[");
+        for (CharTerm matcher : chars) {
+            String name = matcher.name;
+            if (name.length() > 2 && name.startsWith("[") && name.endsWith("]"))
+                name = name.substring(1, name.length() - 1);
+            builder.append(name);
+        }
+        return builder.append("]").toString();
+    }
+}
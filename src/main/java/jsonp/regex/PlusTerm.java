@@ -0,0 +1,14 @@
+package jsonp.regex;
+
+public class PlusTerm extends Term {
+    public final Term t;
+
+    public PlusTerm(Term t) {
+        this.t = t;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s+", this.t);
+    }
+}
@@ -1,7 +1,6 @@
 package jsonp.regex;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 public class Term {
@@ -49,14 +48,15 @@ public class Term {
     }
 
     /**
-     * Repeat term for given times, just contact term for given times.
+     * Repeat term for given times, same as term{n, n}.
      * 
      * @param term going to be repeated
      * @param n    time of repeating
      * @return repeated term
      */
     public static Term repeat(Term term, Integer n) {
-        return concat(Collections.nCopies(n, term));
+        assert n >= 0;
+        return new RepeatTerm(term, n, n);
     }
 
     /**
@@ -77,26 +77,28 @@ public class Term {
      * alter([concat([term] * i) for i in range(n, m + 1)])
      * ```
      * 
+     * Large repetitions like "a{1,1000}" are not unrolled by NFA.build, a counter is used instead.
+     * 
      * @param term going to be repeated
      * @param n    minimum time of repeating
      * @param m    maximum time of repeating
      * @return repeated term
      */
     public static Term repeat(Term term, Integer n, Integer m) {
-        if (n == m)
+        if (n.equals(m))
             return repeat(term, n);
         assert (m > n) && (n >= 0);
         return new RepeatTerm(term, n, m);
     }
 
     /**
-     * Kleene plus operator +.
+     * Kleene plus operator +, term is built only once unlike term term*.
      * 
      * @param term should exists 1 or more times
      * @return repeated term
      */
     public static Term plus(Term term) {
-        return new ConcatTerm(term, new KleeneTerm(term));
+        return new PlusTerm(term);
     }
 
     /**
@@ -133,8 +135,18 @@ public class Term {
         return new CharTerm(form, name);
     }
 
+    /**
+     * Return char range Regex between two chars (both inclusive), like: [a-z].
+     * 
+     * @param from is first char of range
+     * @param to is last char of range
+     * @return char term
+     */
+    public static Term range(char from, char to) {
+        return new CharTerm(new char[] { from, to }, String.format("[%c-%c]", from, to));
+    }
+
     private static final String digitForm = "0123456789";
-    private static final String punctuationForm = "!#$%&'()*+,-./:;<=>?@[]^_`{|}~ ";
     private static final String upperLetterForm = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
     private static final String lowerLetterForm = "abcdefghijklmnopqrstuvwxyz";
 
@@ -142,5 +154,8 @@ public class Term {
     public static final EpsilonTerm Epsilon = new EpsilonTerm();
     public static final Term Digits = srange(digitForm, "[0-9]");
     public static final Term Letters = srange(upperLetterForm + lowerLetterForm, "[a-zA-Z]");
-    public static final Term Any = srange(digitForm + punctuationForm + upperLetterForm + lowerLetterForm, ".");
+
+    // Any char except control chars, double quote and backslash, which is allowed in JSON string directly
+    public static final Term Any = new CharTerm(new char[] {
+            ' ', '!', '#', '[', ']', Character.MAX_VALUE }, ".");
 }
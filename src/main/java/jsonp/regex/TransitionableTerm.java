@@ -4,5 +4,5 @@ package jsonp.regex;
  * CharTerm and EpsilonTerm could be used in NFA Transition matching.
  */
 public interface TransitionableTerm {
-    public Boolean accept(Character c);
+    public boolean accept(char c);
 }
@@ -1,10 +1,52 @@
 package jsonp;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import jsonp.automata.CompactNFA;
+import jsonp.automata.DFA;
+import jsonp.automata.LazyDFA;
+import jsonp.automata.NFA;
+import jsonp.automata.Runner;
+import jsonp.decoder.CompiledLexer;
+import jsonp.decoder.Decoder;
 import jsonp.decoder.JsonObject;
+import jsonp.decoder.JsonReader;
+import jsonp.decoder.Lexer;
+import jsonp.decoder.LineDecoder;
+import jsonp.decoder.MappedTokenStream;
+import jsonp.decoder.NumberParser;
+import jsonp.decoder.ParallelDecoder;
+import jsonp.decoder.Parser;
+import jsonp.decoder.SelectiveDecoder;
+import jsonp.decoder.StructuralDecoder;
+import jsonp.decoder.StructuralIndex;
+import jsonp.decoder.SymbolTable;
+import jsonp.decoder.Token;
+import jsonp.decoder.TokenStream;
 import jsonp.encoder.Encoder;
+import jsonp.regex.Optimizer;
+import jsonp.regex.PlusTerm;
+import jsonp.regex.Term;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
@@ -53,6 +95,32 @@ public class AppTest extends TestCase {
         assertEquals(a, decoded);
     }
 
+    public void testNumberModes() {
+        assertEquals(Long.valueOf(2147483648L), decoder.decode("2147483648").as());
+        assertEquals(Long.MIN_VALUE, (long) decoder.decode("-9223372036854775808").as());
+        assertEquals(new BigInteger("123456789012345678901234567890"),
+                decoder.decode("123456789012345678901234567890").as());
+        assertEquals(0.1, (double) decoder.decode("0.1").as());
+        assertEquals(1.7976931348623157e308, (double) decoder.decode("1.7976931348623157e308").as());
+        assertEquals(4.9e-324, (double) decoder.decode("4.9e-324").as());
+        assertEquals(Double.POSITIVE_INFINITY, (double) decoder.decode("1e400").as());
+
+        // Decimals which would lose digits as double are kept exactly
+        Decoder lossless = new Decoder(NumberParser.Mode.Lossless);
+        assertEquals(new BigDecimal("3.14159265358979323846"),
+                lossless.decode("3.14159265358979323846").as());
+        assertEquals(new BigDecimal("1e400"), lossless.decode("1e400").as());
+        assertEquals(2.5, (double) lossless.decode("2.5000000000000000000").as());
+        assertEquals(Math.PI, (double) lossless.decode("3.141592653589793").as());
+        assertEquals(1.0000000000000002, (double) lossless.decode("1.0000000000000002").as());
+        assertEquals(new BigDecimal("0.10000000000000001"), lossless.decode("0.10000000000000001").as());
+
+        Decoder decimal = new Decoder(NumberParser.Mode.Decimal);
+        List<JsonObject> array = decimal.decode("[1, 0.1]").as();
+        assertEquals(1, (int) array.get(0).as());
+        assertEquals(new BigDecimal("0.1"), array.get(1).as());
+    }
+
     public void testSingleString() {
         String str = "This is a test";
         String encoded = Encoder.encode(str);
@@ -60,6 +128,75 @@ public class AppTest extends TestCase {
         assertEquals(decoded, str);
     }
 
+    public void testEscapedString() {
+        String encoded = "{\"k\\\"ey\": \"a\\\\b\\/c\\n\\u00e9\\ud83d\\ude00\", \"plain\": \"x\\ty\"}";
+        Map<String, JsonObject> decoded = decoder.decode(encoded).as();
+        assertEquals("a\\b/c\n\u00e9\ud83d\ude00", decoded.get("k\"ey").as());
+        assertEquals("x\ty", decoded.get("plain").as());
+        byte[] bytes = encoded.getBytes(StandardCharsets.UTF_8);
+        assertEquals(decoded.toString(), decoder.decode(bytes).toString());
+        assertEquals(decoded.toString(), new StructuralDecoder(decoder).decode(bytes).toString());
+
+        for (String invalid : List.of("\"\\q\"", "\"\\u12\"", "\"\\u12G4\""))
+            try {
+                decoder.decode(invalid);
+                fail(String.format("invalid escape %s should be rejected", invalid));
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().contains("invalid token"));
+            }
+    }
+
+    public void testCompactValues() {
+        JsonObject decoded = decoder.decode(
+                "{\"i\": 7, \"l\": 4294967296, \"d\": 0.5, \"b\": true, \"n\": null, \"a\": [1, \"x\"], \"i\": 8}");
+        Map<String, JsonObject> members = decoded.as();
+        assertEquals(6, decoded.size());
+        // Small objects keep members in order of insertion, later duplicated keys replace earlier ones
+        assertEquals(List.of("i", "l", "d", "b", "n", "a"), List.copyOf(members.keySet()));
+        assertEquals(8, (int) members.get("i").as());
+        assertEquals(4294967296L, members.get("l").asLong());
+        assertEquals(0.5, members.get("d").asDouble());
+        assertTrue(members.get("b").asBoolean());
+        assertEquals(Boolean.TRUE, members.get("b").as());
+        assertNull(members.get("n").as());
+        assertEquals("{i=8, l=4294967296, d=0.5, b=true, n=null, a=[1, x]}", decoded.toString());
+        assertEquals(2, members.get("a").size());
+
+        StringBuilder encoded = new StringBuilder("{");
+        for (int index = 0; index < 100; index++)
+            encoded.append(String.format("%s\"k%d\": %d", index > 0 ? ", " : "", index, index));
+        Map<String, JsonObject> large = decoder.decode(encoded.append("}").toString()).as();
+        assertEquals(100, large.size());
+        for (int index = 0; index < 100; index++)
+            assertEquals(index, large.get("k" + index).asLong());
+    }
+
+    public void testSymbolTable() throws InterruptedException {
+        Map<String, JsonObject> first = decoder.decode("{\"name\": 1, \"caf\u00e9\": 2, \"a\\\"b\": 3}").as();
+        Map<String, JsonObject> second = decoder.decode("{\"name\": 4}".getBytes(StandardCharsets.UTF_8)).as();
+        // Keys of different documents and sources share a canonical string
+        assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+        assertEquals(2, (int) first.get("caf\u00e9").as());
+        assertEquals(3, (int) first.get("a\"b").as());
+
+        // Keys evicting each other from a tiny table are still decoded correctly by all threads
+        Decoder shared = new Decoder(NumberParser.Mode.Default, new SymbolTable(2));
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int thread = 0; thread < 4; thread++)
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int round = 0; round < 200; round++) {
+                    Map<String, JsonObject> members = shared.decode(String.format(
+                            "{\"k%d\": %d, \"key\": 0, \"k%d\": 1}", round, round, round + 1)).as();
+                    if (members.get("k" + round).asLong() != round || members.get("k" + (round + 1)).asLong() != 1)
+                        failures.add(new AssertionError(members.toString()));
+                }
+            }));
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(failures.isEmpty());
+    }
+
     public void testEmptyList() {
         List<Integer> list = List.of();
         String encoded = Encoder.encode(list);
@@ -89,4 +226,448 @@ public class AppTest extends TestCase {
         Map<String, JsonObject> content = decoded.get(1).as();
         assertEquals(data.get(1).get("C"), content.get("C").as());
     }
+
+    public void testLiterals() {
+        String encoded = "[true, false, null, \"x\"]";
+        List<JsonObject> decoded = decoder.decode(encoded).as();
+        assertEquals(true, (boolean) decoded.get(0).as());
+        assertEquals(false, (boolean) decoded.get(1).as());
+        assertEquals(JsonObject.Type.Null, decoded.get(2).type);
+        assertEquals("x", decoded.get(3).as());
+    }
+
+    public void testInvalidToken() {
+        try {
+            decoder.decode("[tru]");
+            fail("invalid literal should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("invalid token"));
+        }
+    }
+
+    public void testMinimizedLexer() {
+        DFA dfa = (DFA) decoder.lexer.automaton;
+        assertTrue(dfa.stats.minimized < dfa.stats.built);
+        assertEquals(dfa.size(), dfa.stats.minimized);
+    }
+
+    public void testEngines() {
+        String encoded = "{\"a\": [1, -2.5e3, true, false, \"x y\"], \"b\": {}}";
+        for (Lexer.Engine engine : Lexer.Engine.values()) {
+            Decoder other = new Decoder(engine);
+            assertEquals(decoder.decode(encoded).toString(), other.decode(encoded).toString());
+        }
+    }
+
+    public void testLazyDFAFallback() {
+        // Cache with only two states keeps thrashing and falls back to NFA simulation
+        Term term = Term.concat(List.of(Term.repeat(Term.Letters), Term.Digits)).group("word");
+        CompactNFA nfa = CompactNFA.build(NFA.build(term));
+        Runner runner = new LazyDFA(nfa, 0).runner();
+        for (char c : "abcdef1".toCharArray())
+            assertTrue(runner.step(c));
+        assertEquals("word", runner.label());
+        assertFalse(runner.step('x'));
+    }
+
+    public void testCountedRepeat() {
+        // Bounded field is built with a counter instead of 1000 copies
+        Term term = Term.repeat(Term.Letters, 2, 1000).group("field");
+        CompactNFA counted = CompactNFA.build(NFA.build(term));
+        assertTrue(counted.counting);
+        assertTrue(counted.size < 10);
+        for (Runner runner : List.of(counted.runner(), new LazyDFA(counted).runner())) {
+            assertTrue(runner.step('a'));
+            assertNull(runner.label());
+            for (int index = 1; index < 1000; index++)
+                assertTrue(runner.step('a'));
+            assertEquals("field", runner.label());
+            assertFalse(runner.step('a'));
+        }
+    }
+
+    public void testUnrolledRepeat() {
+        // DFA engines unroll bounded repetitions, alphabet of every copy is kept
+        Term term = Term.concat(List.of(Term.repeat(Term.Letters, 2, 20), Term.Digits)).group("field");
+        CompactNFA unrolled = CompactNFA.build(NFA.build(term, false));
+        assertFalse(unrolled.counting);
+        for (Runner runner : List.of(DFA.build(unrolled).minimize().runner(), new LazyDFA(unrolled).runner())) {
+            for (int letters : List.of(1, 2, 20, 21)) {
+                runner.reset();
+                String text = "a".repeat(letters) + "7";
+                int end = runner.advance(text, 0, text.length());
+                assertEquals(letters >= 2 && letters <= 20, end == text.length() && "field".equals(runner.label()));
+            }
+        }
+
+        // Counter values of each counted state are part of cached states, and counted against budget
+        CompactNFA counted = CompactNFA.build(NFA.build(Term.repeat(Term.Letters, 2, 1000).group("field")));
+        LazyDFA lazy = new LazyDFA(counted, 64 * 1024);
+        assertTrue(lazy.capacity * Long.BYTES * (counted.words() + 1000 / 64) <= 64 * 1024);
+    }
+
+    public void testOptimizer() {
+        Term term = Term.alter(List.of(
+                Term.string("true"), Term.string("trie"), Term.string("a"), Term.string("b"))).group("word");
+        Term optimized = Optimizer.optimize(term);
+        assertEquals("word", optimized.label);
+        assertTrue(CompactNFA.build(NFA.build(optimized)).size < CompactNFA.build(NFA.build(term)).size);
+        Runner runner = CompactNFA.build(NFA.build(optimized)).runner();
+        for (String word : List.of("true", "trie", "a", "b")) {
+            runner.reset();
+            for (char c : word.toCharArray())
+                assertTrue(runner.step(c));
+            assertEquals("word", runner.label());
+        }
+
+        // x x* collapses into x+, shared terms are left untouched
+        Term digits = Optimizer.optimize(Term.concat(List.of(Term.Digits, Term.repeat(Term.Digits))).group("digits"));
+        assertTrue(digits instanceof PlusTerm);
+        assertFalse(Term.Digits.grouped);
+    }
+
+    public void testUnicodeString() {
+        String str = "Gr\u00fc\u00dfe, \u4e16\u754c \ud83d\ude00";
+        String decoded = decoder.decode(Encoder.encode(str)).as();
+        assertEquals(str, decoded);
+    }
+
+    public void testUTF8Bytes() {
+        String encoded = "{\"gr\u00fc\u00dfe\": [\"\u4e16\u754c \ud83d\ude00\", 1.5]}";
+        assertTrue(decoder.lexer.bytes);
+        byte[] bytes = encoded.getBytes(StandardCharsets.UTF_8);
+        String expected = decoder.decode(encoded).toString();
+        assertEquals(expected, decoder.decode(bytes).toString());
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(expected, decoder.decode(direct).toString());
+        assertEquals(expected, new Decoder(Lexer.Engine.Lazy).decode(bytes).toString());
+
+        for (Decoder engine : List.of(decoder, new Decoder(Lexer.Engine.Lazy))) {
+            try {
+                engine.decode("[1] \u00fc".getBytes(StandardCharsets.UTF_8));
+                fail();
+            } catch (RuntimeException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    public void testMappedFile() throws IOException {
+        String encoded = "{\"name\": \"gr\u00fc\u00dfe across windows\", \"list\": [1, 22, 333, true]}";
+        Path path = Files.createTempFile("jsonp", ".json");
+        try {
+            Files.writeString(path, encoded);
+            String expected = decoder.decode(encoded).toString();
+            assertEquals(expected, decoder.decode(path).toString());
+
+            // Tiny windows force tokens to be remapped and windows to grow
+            try (FileChannel channel = FileChannel.open(path)) {
+                Parser parser = new Parser(new MappedTokenStream(decoder.lexer, channel, 3));
+                assertEquals(expected, parser.parse().toString());
+            }
+
+            Files.writeString(path, encoded + " \n" + encoded);
+            try {
+                decoder.decode(path);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getMessage().startsWith("unexpected"));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    public void testLexerTables() throws IOException {
+        DFA compiled = (DFA) new CompiledLexer(Decoder.grammar(), Lexer.Engine.DFA).automaton;
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        compiled.write(stream);
+        DFA loaded = DFA.read(ByteBuffer.wrap(stream.toByteArray()));
+        assertTrue(Arrays.equals(compiled.table, loaded.table));
+        assertTrue(Arrays.equals(compiled.labels, loaded.labels));
+
+        Decoder decoder = new Decoder();
+        String encoded = "{\"a\": [1, -2.5e3, true, false, \"x\u00e9\"]}";
+        assertEquals(decoder.decode(encoded).toString(), new Decoder(Lexer.Engine.DFA).decode(encoded).toString());
+    }
+
+    public void testTokenOffsets() {
+        String encoded = "[12, \"ab\"]";
+        List<Token> tokens = decoder.tokenize(encoded);
+        assertEquals(6, tokens.size());
+        Token string = tokens.get(4);
+        assertSame(encoded, string.source);
+        assertEquals(5, string.start);
+        assertEquals(9, string.end);
+        assertEquals("\"ab\"", string.content());
+        assertEquals("ab", JsonObject.parseString(string));
+        assertEquals(12, JsonObject.parseNumber(tokens.get(1)));
+
+        // Tokens are pulled while parsing, but anything except spaces after value is still rejected
+        assertEquals("[1]", decoder.decode("[1] \n").toString());
+        for (String trailing : List.of("{\"a\": 1} @@@", "[1] garbage", "1 2")) {
+            try {
+                decoder.decode(trailing);
+                fail(trailing);
+            } catch (RuntimeException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    public void testStreamingDecoder() {
+        String encoded = "{\"name\": \"a long string spanning several refills\", \"list\": [1, 2.5, true, false]}";
+        String expected = decoder.decode(encoded).toString();
+
+        // Tiny buffer forces tokens to span refills
+        TokenStream tokens = new TokenStream(decoder.lexer, new StringReader(encoded), 4);
+        assertEquals(expected, new Parser(tokens).parse().toString());
+        assertFalse(tokens.hasNext());
+
+        byte[] bytes = encoded.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, decoder.decode(new ByteArrayInputStream(bytes)).toString());
+        assertEquals(expected, decoder.decode(Channels.newChannel(
+                new ByteArrayInputStream(bytes))).toString());
+
+        byte[] trailing = (encoded + " x").getBytes(StandardCharsets.UTF_8);
+        try {
+            decoder.decode(new ByteArrayInputStream(trailing));
+            fail();
+        } catch (RuntimeException e) {
+            assertNotNull(e.getMessage());
+        }
+        try {
+            decoder.decode(new StringReader("1 2"));
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("unexpected"));
+        }
+    }
+
+    public void testJsonReader() {
+        String encoded = "{\"skipped\": {\"a\": [1, [2]]}, \"id\": 7, \"tags\": [\"x\", false]}";
+        JsonReader reader = decoder.reader(new StringReader(encoded));
+        assertEquals(JsonReader.Event.ObjectBegin, reader.next());
+        assertEquals(JsonReader.Event.Name, reader.next());
+        assertEquals("skipped", reader.name());
+        reader.skip();
+        assertEquals(JsonReader.Event.ObjectEnd, reader.event());
+        assertEquals(1, reader.depth());
+
+        assertEquals(JsonReader.Event.Name, reader.next());
+        assertEquals("id", reader.name());
+        assertEquals(JsonReader.Event.Value, reader.next());
+        assertEquals(7, (int) new JsonObject(reader.token()).as());
+
+        assertEquals(JsonReader.Event.Name, reader.next());
+        assertEquals("[x, false]", reader.read().toString());
+        assertEquals(JsonReader.Event.ObjectEnd, reader.next());
+        assertEquals(JsonReader.Event.End, reader.next());
+    }
+
+    public void testLineDecoder() throws IOException {
+        StringBuilder lines = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int index = 0; index < 500; index++) {
+            String line = String.format("{\"id\": %d, \"name\": \"r\u00e9cord %d\"}", index, index);
+            lines.append(line).append(index % 7 == 0 ? "\r\n\n" : "\n");
+            expected.add(decoder.decode(line).toString());
+        }
+        byte[] bytes = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Small chunks for splitting input into many tasks
+        LineDecoder lineDecoder = new LineDecoder(decoder, ForkJoinPool.commonPool(), 256);
+        assertEquals(expected, lineDecoder.decode(ByteBuffer.wrap(bytes)).map(JsonObject::toString).toList());
+        assertEquals(expected, lineDecoder.decode(new ByteArrayInputStream(bytes))
+                .map(JsonObject::toString).toList());
+
+        Path path = Files.createTempFile("jsonp", ".ndjson");
+        try {
+            Files.write(path, bytes);
+            List<String> results = Collections.synchronizedList(new ArrayList<>());
+            lineDecoder.decode(path, record -> results.add(record.toString()));
+            assertEquals(new HashSet<>(expected), new HashSet<>(results));
+            assertEquals(expected.size(), results.size());
+        } finally {
+            Files.delete(path);
+        }
+
+        // Callback is not called any more once a failed chunk is reported
+        byte[] broken = (lines + "{\"id\": }\n" + lines).getBytes(StandardCharsets.UTF_8);
+        List<JsonObject> records = Collections.synchronizedList(new ArrayList<>());
+        try {
+            lineDecoder.decode(ByteBuffer.wrap(broken), records::add);
+            fail();
+        } catch (RuntimeException e) {
+            int count = records.size();
+            ForkJoinPool.commonPool().awaitQuiescence(1, TimeUnit.SECONDS);
+            assertEquals(count, records.size());
+        }
+    }
+
+    public void testParallelArray() {
+        StringBuilder encoded = new StringBuilder("[");
+        for (int index = 0; index < 300; index++) {
+            if (index > 0)
+                encoded.append(", ");
+            encoded.append(String.format("{\"id\": %d, \"text\": \"a, [b] {c}\", \"list\": [%d, \"]\"]}", index, index));
+        }
+        encoded.append("]");
+        String expected = decoder.decode(encoded.toString()).toString();
+
+        // Threshold of 0 decodes everything in parallel
+        ParallelDecoder parallel = new ParallelDecoder(decoder, ForkJoinPool.commonPool(), 0);
+        assertEquals(expected, parallel.decode(encoded).toString());
+        assertEquals(expected, parallel.decode(
+                encoded.toString().getBytes(StandardCharsets.UTF_8)).toString());
+
+        // Failed speculation falls back to sequential decoding, which reports error
+        try {
+            parallel.decode(encoded.insert(encoded.length() - 1, ",").toString());
+            fail("trailing comma should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("cannot be parsed"));
+        }
+    }
+
+    public void testStructuralIndex() {
+        String encoded = "{\"a\": [1, \"x,]\\\\\", true]}";
+        byte[] bytes = encoded.getBytes(StandardCharsets.UTF_8);
+        StructuralIndex index = StructuralIndex.build(bytes, 0, bytes.length, false);
+        // Quotes, structural chars and starts of scalars, nothing inside strings
+        assertEquals(List.of(0, 1, 3, 4, 6, 7, 8, 10, 16, 17, 19, 23, 24),
+                Arrays.stream(index.positions, 0, index.count).boxed().toList());
+        assertTrue(index.escapes);
+        assertNull(StructuralIndex.build("[\"open".getBytes(), 0, 6, false));
+
+        StringBuilder document = new StringBuilder("[");
+        for (int item = 0; item < 100; item++)
+            document.append(String.format("{\"id\": %d, \"text\": \"é [b] {c}\", \"ok\": false},\n", item));
+        document.append("0]");
+        bytes = document.toString().getBytes(StandardCharsets.UTF_8);
+        String expected = decoder.decode(document.toString()).toString();
+        assertEquals(expected, new StructuralDecoder(decoder, false).decode(bytes).toString());
+        if (StructuralIndex.Vectorized) {
+            StructuralIndex vectorized = StructuralIndex.build(bytes, 0, bytes.length, true);
+            StructuralIndex scalar = StructuralIndex.build(bytes, 0, bytes.length, false);
+            assertEquals(scalar.count, vectorized.count);
+            assertTrue(Arrays.equals(scalar.positions, 0, scalar.count, vectorized.positions, 0, vectorized.count));
+            assertEquals(expected, new StructuralDecoder(decoder, true).decode(bytes).toString());
+        }
+
+        try {
+            new StructuralDecoder(decoder).decode("[1, tru]".getBytes());
+            fail("invalid scalar should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("invalid token"));
+        }
+    }
+
+    public void testLongAndDeepCollections() {
+        StringBuilder flat = new StringBuilder("[0");
+        for (int index = 1; index < 100000; index++)
+            flat.append(',').append(index);
+        List<JsonObject> array = decoder.decode(flat.append(']').toString()).as();
+        assertEquals(100000, array.size());
+        assertEquals(99999, (int) array.get(99999).as());
+
+        // Nesting is only bounded by heap, not by java stack
+        String deep = "[{\"a\": ".repeat(50000) + "1" + "}]".repeat(50000);
+        JsonObject object = decoder.decode(deep);
+        for (int level = 0; level < 50000; level++) {
+            List<JsonObject> elements = object.as();
+            Map<String, JsonObject> members = elements.get(0).as();
+            object = members.get("a");
+        }
+        assertEquals(1, (int) object.as());
+    }
+
+    public void testSharedDecoder() throws InterruptedException {
+        String encoded = "[{\"a\": 1}, {\"b\": [true, \"x\"]}, 3.5]";
+        String expected = decoder.decode(encoded).toString();
+        List<String> results = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int index = 0; index < 8; index++)
+            threads.add(Thread.ofVirtual().start(() -> {
+                for (int round = 0; round < 100; round++)
+                    results.add(decoder.decode(encoded).toString());
+            }));
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(800, results.size());
+        for (String result : results)
+            assertEquals(expected, result);
+    }
+
+    public void testReusedLazyCursor() {
+        // Each call borrows cursor of current thread, so lazy states built by earlier documents are reused
+        Decoder lazy = new Decoder(Lexer.Engine.Lazy);
+        String encoded = "{\"a\": [1, 2.5e3, \"x\\n\"], \"b\": {\"c\": [true, false, null]}}";
+        String expected = decoder.decode(encoded).toString();
+        for (int round = 0; round < 1000; round++)
+            assertEquals(expected, lazy.decode(encoded).toString());
+
+        // Cursor released by a failed call still scans next document from its start
+        try {
+            lazy.decode("{\"a\": [1, }");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("cannot be parsed as"));
+        }
+        assertEquals(expected, lazy.decode(encoded).toString());
+        assertEquals(decoder.tokenize(encoded).size(), lazy.tokenize(encoded).size());
+
+        // Idle cursors belong to their compiled lexer, so a used decoder is still collected after dropped
+        WeakReference<CompiledLexer> compiled = decodeOnce(encoded);
+        for (int round = 0; round < 50 && compiled.get() != null; round++)
+            System.gc();
+        assertNull(compiled.get());
+    }
+
+    private static WeakReference<CompiledLexer> decodeOnce(String encoded) {
+        Decoder lazy = new Decoder(Lexer.Engine.Lazy);
+        lazy.decode(encoded);
+        return new WeakReference<>(lazy.lexer);
+    }
+
+    public void testSelectiveDecoder() {
+        String encoded = "{\"meta\": {\"id\": 7, \"tags\": [\"a\", \"b\"]}, "
+                + "\"skipped\": [{\"x\": \"]}\\\"\"}, [1, {}]], "
+                + "\"items\": [{\"price\": 1.5}, {\"name\": \"c\"}, {\"price\": 2}]}";
+        SelectiveDecoder selective = new SelectiveDecoder(decoder,
+                List.of("$.meta.id", "$.items[*].price", "/meta/tags/1", "$['items'][1]", "$.missing"));
+        Map<String, List<JsonObject>> values = selective.decode(encoded);
+        assertEquals("[7]", values.get("$.meta.id").toString());
+        assertEquals("[1.5, 2]", values.get("$.items[*].price").toString());
+        assertEquals("[b]", values.get("/meta/tags/1").toString());
+        assertEquals("[{name=c}]", values.get("$['items'][1]").toString());
+        assertTrue(values.get("$.missing").isEmpty());
+        assertEquals(values.toString(), selective.decode(encoded.getBytes(StandardCharsets.UTF_8)).toString());
+
+        // Selected values are still checked, and so are containers around them
+        try {
+            selective.decode("{\"meta\": {\"id\" 7}}");
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("expected colon"));
+        }
+        for (String malformed : List.of("[1,]", "[,]", "[1,,2]", "[1:2]", "{\"a\": 1,}", "[1, 2")) {
+            try {
+                new SelectiveDecoder(decoder, List.of("$[0]", "$.a")).decode(malformed);
+                fail(malformed);
+            } catch (RuntimeException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+
+        // Repeated paths are selected once
+        assertEquals("{$.a=[1]}", new SelectiveDecoder(decoder, List.of("$.a", "$.a")).decode("{\"a\": 1}").toString());
+        try {
+            new SelectiveDecoder(decoder, List.of("$..price"));
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("unsupported json path"));
+        }
+    }
 }
@@ -0,0 +1,86 @@
+package jsonp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import jsonp.automata.Runner;
+import jsonp.decoder.CompiledLexer;
+import jsonp.decoder.Decoder;
+import jsonp.decoder.Lexer;
+import jsonp.encoder.Encoder;
+
+/**
+ * Compare throughput of lexer engines on a generated document.
+ *
+ * Run with: java -cp target/classes:target/test-classes jsonp.LexerBenchmark [engine...]
+ *
+ * Call sites of runners get polluted while all engines running in one JVM,
+ * so pass a single engine for each run to get comparable numbers.
+ */
+public class LexerBenchmark {
+    private static final int Rounds = 20;
+
+    public static void main(String[] args) {
+        List<Object> records = new ArrayList<>();
+        for (int index = 0; index < 20000; index++)
+            records.add(Map.of(
+                    "id", index,
+                    "name", "record " + index,
+                    "score", index * 0.25,
+                    "tags", List.of("alpha", "beta", index)));
+        String document = Encoder.encode(records);
+        System.out.printf("document: %d chars%n", document.length());
+
+        List<Lexer.Engine> engines = new ArrayList<>();
+        for (String name : args)
+            engines.add(Lexer.Engine.valueOf(name));
+        if (engines.isEmpty())
+            engines.addAll(List.of(Lexer.Engine.values()));
+
+        for (Lexer.Engine engine : engines) {
+            CompiledLexer compiled = new CompiledLexer(Decoder.grammar(), engine);
+            Lexer lexer = compiled.lexer();
+            Runner runner = compiled.automaton.runner();
+            long best = Long.MAX_VALUE, bestMatching = Long.MAX_VALUE;
+            int tokens = 0;
+            for (int round = 0; round < Rounds; round++) {
+                long begin = System.nanoTime();
+                tokens = scan(lexer, document);
+                best = Math.min(best, System.nanoTime() - begin);
+                begin = System.nanoTime();
+                match(runner, document);
+                bestMatching = Math.min(bestMatching, System.nanoTime() - begin);
+            }
+            System.out.printf("%-10s %8d tokens, lexer %8.2f ms %8.1f MB/s, automaton %8.2f ms %8.1f MB/s%n",
+                    engine, tokens,
+                    best / 1e6, document.length() / (best / 1e3),
+                    bestMatching / 1e6, document.length() / (bestMatching / 1e3));
+        }
+    }
+
+    /**
+     * Run automaton only, without building tokens.
+     */
+    private static int match(Runner runner, String document) {
+        int tokens = 0;
+        int index = 0;
+        while (index < document.length()) {
+            runner.reset();
+            int next = runner.advance(document, index, document.length());
+            if (next == index)
+                throw new RuntimeException(String.format("invalid token %c", document.charAt(index)));
+            index = next;
+            tokens++;
+        }
+        return tokens;
+    }
+
+    private static int scan(Lexer lexer, String document) {
+        int tokens = 0;
+        lexer.reset(document);
+        while (lexer.next() != null)
+            tokens++;
+        return tokens;
+    }
+}